@@ -0,0 +1,77 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.antlr;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lexes and parses large generated scripts with deeply nested blocks, the input for which the
+ * indentation handling of {@link Python3LexerBase} matters most.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Python3LexerBenchmark {
+
+    // Nesting depth of the generated blocks
+    @Param({"4", "32"})
+    public int depth;
+
+    // Number of generated blocks
+    @Param({"10", "100"})
+    public int blocks;
+
+    private String code;
+
+    @Setup
+    public void generate() {
+        StringBuilder script = new StringBuilder("total = 0\n");
+        for (int block = 0; block < blocks; block++) {
+            for (int level = 0; level < depth; level++) {
+                String indent = "    ".repeat(level);
+                script.append(indent).append("for v").append(level).append(" in range(3):\n");
+                script.append(indent).append("    # level ").append(level).append("\n\n");
+            }
+            String indent = "    ".repeat(depth);
+            script.append(indent).append("total += params['w'] * v0\n");
+            script.append(indent).append("ctx['field_").append(block).append("'] = [\n");
+            script.append(indent).append("    total,\n");
+            script.append(indent).append("]\n");
+        }
+        // The last block is closed by the dedents emitted at the end of the input
+        code = script.toString();
+    }
+
+    @Benchmark
+    public List<? extends Token> lex() {
+        return new Python3Lexer(CharStreams.fromString(code)).getAllTokens();
+    }
+
+    @Benchmark
+    public Python3Parser.File_inputContext parse() {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
+        Python3Parser parser = new Python3Parser(new CommonTokenStream(lexer));
+        return TwoStageParsing.parse(parser, Python3Parser::file_input);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.nio.charset.StandardCharsets;
+import org.graalvm.polyglot.Source;
+import org.opensearch.common.hash.MessageDigests;
+import org.opensearch.script.ScriptException;
+
+/**
+ * A Python script as produced by {@link PythonScriptEngine#compile}, shared by all executions of
+ * the script. Scripts are analyzed once when they are compiled, so holding a compiled script means
+ * that it passed the checks and executions do not parse it again.
+ *
+ * @param name stable name of the script, derived from its content hash and the id of stored
+ *     scripts
+ * @param code the script source code
+ * @param source the polyglot source evaluated by every execution. Evaluating the same source
+ *     object lets the shared engine skip parsing the script again.
+ * @param analysis what compile-time analysis found out about the script. Leaf scripts resolve
+ *     the doc fields it reads once per segment and parse the source keys it reads in a single
+ *     pass, score scripts evaluate its numeric expression instead of running Python.
+ */
+public record CompiledPythonScript(
+        String name, String code, Source source, ScriptAnalysis analysis) {
+
+    /**
+     * Checks a script and creates its compiled form.
+     *
+     * @param id the id of a stored script, or null or the source itself for inline scripts
+     * @param code the script source code
+     * @return the compiled script
+     * @throws ScriptException if the script fails the semantic checks
+     */
+    public static CompiledPythonScript create(String id, String code) {
+        ScriptAnalysis analysis = ScriptAnalysis.analyze(code);
+        String name = name(id, code);
+        Source source =
+                Source.newBuilder(PythonScriptEngine.NAME, code, name).cached(true).buildLiteral();
+        return new CompiledPythonScript(name, code, source, analysis);
+    }
+
+    /**
+     * @param id the id of a stored script, or null or the source itself for inline scripts, which
+     *     is what the script service passes for them
+     * @param code the script source code
+     * @return the stable name of the script, derived from the content hash and the id of stored
+     *     scripts
+     */
+    public static String name(String id, String code) {
+        byte[] digest = MessageDigests.sha256().digest(code.getBytes(StandardCharsets.UTF_8));
+        String hash = MessageDigests.toHexString(digest).substring(0, 16);
+        if (id == null || id.equals(code)) {
+            return hash + ".py";
+        }
+        return id + "-" + hash + ".py";
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/**
+ * A node level cache of compiled scripts, keyed by script id and content hash.
+ *
+ * <p>OpenSearch compiles a script again whenever its own script cache misses, e.g. for inline
+ * scripts that are evicted or sent with a different script context. The analysis, the polyglot
+ * source and the numeric expression of a script only depend on its code, so identical scripts are
+ * compiled once per node and share them.
+ */
+public class CompiledScriptCache {
+    // 0 disables the cache
+    public static final Setting<Integer> SIZE_SETTING =
+            Setting.intSetting("plugins.python.compile_cache.size", 1000, 0, Property.NodeScope);
+    // 0 means that scripts are only evicted when the cache is full
+    public static final Setting<TimeValue> EXPIRE_SETTING =
+            Setting.positiveTimeSetting(
+                    "plugins.python.compile_cache.expire",
+                    TimeValue.timeValueHours(1),
+                    Property.NodeScope);
+
+    // Null if the cache is disabled
+    private final Cache<String, CompiledPythonScript> cache;
+
+    public CompiledScriptCache(Settings settings) {
+        int size = SIZE_SETTING.get(settings);
+        TimeValue expire = EXPIRE_SETTING.get(settings);
+        if (size == 0) {
+            this.cache = null;
+            return;
+        }
+        CacheBuilder<String, CompiledPythonScript> builder =
+                CacheBuilder.<String, CompiledPythonScript>builder().setMaximumWeight(size);
+        if (expire.nanos() > 0) {
+            builder.setExpireAfterAccess(expire);
+        }
+        this.cache = builder.build();
+    }
+
+    /**
+     * Returns the compiled form of a script, compiling it on a miss.
+     *
+     * @param id the id of a stored script, or null or the source itself for inline scripts
+     * @param code the script source code
+     * @return the compiled script
+     * @throws org.opensearch.script.ScriptException if the script fails the semantic checks
+     */
+    public CompiledPythonScript compile(String id, String code) {
+        return compile(id, code, script -> {});
+    }
+
+    /**
+     * Returns the compiled form of a script, compiling it on a miss.
+     *
+     * @param id the id of a stored script, or null or the source itself for inline scripts
+     * @param code the script source code
+     * @param onCompile called once for every script that is actually compiled, before it is
+     *     cached. A script it throws for is not cached, so it is called again on the next compile.
+     * @return the compiled script
+     * @throws org.opensearch.script.ScriptException if the script fails the semantic checks
+     */
+    public CompiledPythonScript compile(
+            String id, String code, Consumer<CompiledPythonScript> onCompile) {
+        if (cache == null) {
+            return create(id, code, onCompile);
+        }
+        String name = CompiledPythonScript.name(id, code);
+        CompiledPythonScript script;
+        try {
+            script = cache.computeIfAbsent(name, key -> create(id, code, onCompile));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        // Names only carry a prefix of the content hash
+        return script.code().equals(code) ? script : create(id, code, onCompile);
+    }
+
+    private static CompiledPythonScript create(
+            String id, String code, Consumer<CompiledPythonScript> onCompile) {
+        CompiledPythonScript script = CompiledPythonScript.create(id, code);
+        onCompile.accept(script);
+        return script;
+    }
+
+    /** Writes the size and the hit, miss and eviction counts of the cache. */
+    public XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        builder.field("enabled", cache != null);
+        if (cache != null) {
+            Cache.CacheStats stats = cache.stats();
+            builder.field("count", cache.count());
+            builder.field("hits", stats.getHits());
+            builder.field("misses", stats.getMisses());
+            builder.field("evictions", stats.getEvictions());
+        }
+        return builder.endObject();
+    }
+}
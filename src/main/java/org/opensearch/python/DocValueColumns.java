@@ -0,0 +1,246 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.index.LeafReaderContext;
+import org.opensearch.index.fielddata.IndexFieldData;
+import org.opensearch.index.fielddata.ScriptDocValues;
+import org.opensearch.index.mapper.MappedFieldType;
+import org.opensearch.search.lookup.LeafSearchLookup;
+import org.opensearch.search.lookup.SearchLookup;
+
+/**
+ * The doc values and scores a batch script reads for a block of documents of a segment. Every
+ * field is stored column-wise: the values of all documents in document order, plus the offset of
+ * the first value of every document.
+ *
+ * <p>The values of long and double fields are read from their {@link NumericDocValuesBuffer} into
+ * a native-order direct buffer, and the offsets and scores are direct buffers as well. Python wraps
+ * them with memoryviews once and rewraps them only when a buffer is replaced by a larger one, see
+ * {@link #generation()}, so the values reach Python and numpy as primitives without boxing or
+ * copying. The values of other fields, e.g. keywords or dates, are read from the doc lookup as
+ * Java objects.
+ *
+ * <p>Instances are reused from block to block and are not thread safe.
+ */
+public final class DocValueColumns {
+    private static final int INITIAL_CAPACITY = 64;
+    // Generations are unique across instances, a context can score blocks of several segments
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+
+    private final String[] fields;
+    // Null for fields whose values are read from the doc lookup
+    private final NumericDocValuesBuffer[] numericFields;
+    private final ByteBuffer[] numericValues;
+    private final Object[][] objectValues;
+    private final ByteBuffer[] offsets;
+    private final int[] valueCounts;
+    private final boolean hasObjectFields;
+    private ByteBuffer scores = allocate(INITIAL_CAPACITY * Double.BYTES);
+    // Changes whenever a buffer is replaced, so that Python knows to wrap them again
+    private int generation = GENERATIONS.incrementAndGet();
+    private int size = 0;
+
+    /**
+     * @param fields the fields the batch script reads
+     * @param lookup resolves the field data of numeric fields
+     * @param leaf the segment the blocks belong to
+     */
+    DocValueColumns(String[] fields, SearchLookup lookup, LeafReaderContext leaf) {
+        this.fields = fields;
+        this.numericFields = new NumericDocValuesBuffer[fields.length];
+        this.numericValues = new ByteBuffer[fields.length];
+        this.objectValues = new Object[fields.length][];
+        this.offsets = new ByteBuffer[fields.length];
+        this.valueCounts = new int[fields.length];
+        boolean hasObjectFields = false;
+        for (int field = 0; field < fields.length; field++) {
+            numericFields[field] = numericBuffer(lookup, leaf, fields[field]);
+            if (numericFields[field] != null) {
+                numericValues[field] = allocate(INITIAL_CAPACITY * Long.BYTES);
+            } else {
+                objectValues[field] = new Object[INITIAL_CAPACITY];
+                hasObjectFields = true;
+            }
+            offsets[field] = allocate((INITIAL_CAPACITY + 1) * Integer.BYTES);
+        }
+        this.hasObjectFields = hasObjectFields;
+    }
+
+    private static NumericDocValuesBuffer numericBuffer(
+            SearchLookup lookup, LeafReaderContext leaf, String field) {
+        MappedFieldType fieldType = lookup.fieldType(field);
+        if (fieldType == null) {
+            return null;
+        }
+        IndexFieldData<?> fieldData;
+        try {
+            fieldData = lookup.getForField(fieldType);
+        } catch (IllegalArgumentException e) {
+            // The field has no field data, e.g. doc values are disabled
+            return null;
+        }
+        // Element access is only needed for dates, which are read as objects
+        NumericDocValuesBuffer buffer =
+                NumericDocValuesBuffer.create(
+                        fieldData,
+                        leaf,
+                        () -> {
+                            throw new IllegalStateException("no element access for " + field);
+                        });
+        if (buffer == null || !(buffer.kind().equals("long") || buffer.kind().equals("double"))) {
+            return null;
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Loads the values of the given documents and clears their scores.
+     *
+     * @param lookup a lookup over the segment that is not shared with the per-document scripts,
+     *     since doc values can only be iterated forward. Only used for fields that are not read
+     *     into buffers.
+     * @param docs the documents in increasing order, the first {@code count} are loaded
+     */
+    void load(LeafSearchLookup lookup, int[] docs, int count) {
+        size = count;
+        Arrays.fill(valueCounts, 0);
+        if (scores.capacity() < count * Double.BYTES) {
+            scores = allocate(count * Double.BYTES);
+            generation = GENERATIONS.incrementAndGet();
+        }
+        for (int index = 0; index < count; index++) {
+            scores.putDouble(index * Double.BYTES, Double.NaN);
+        }
+        for (int field = 0; field < fields.length; field++) {
+            if (offsets[field].capacity() < (count + 1) * Integer.BYTES) {
+                offsets[field] = allocate((count + 1) * Integer.BYTES);
+                generation = GENERATIONS.incrementAndGet();
+            }
+            offsets[field].putInt(0, 0);
+        }
+        for (int index = 0; index < count; index++) {
+            int doc = docs[index];
+            if (hasObjectFields) {
+                lookup.setDocument(doc);
+            }
+            for (int field = 0; field < fields.length; field++) {
+                if (numericFields[field] != null) {
+                    loadNumeric(field, doc);
+                } else {
+                    loadObjects(field, lookup.doc().get(fields[field]));
+                }
+                offsets[field].putInt((index + 1) * Integer.BYTES, valueCounts[field]);
+            }
+        }
+    }
+
+    private void loadNumeric(int field, int doc) {
+        NumericDocValuesBuffer buffer = numericFields[field];
+        buffer.setDocument(doc);
+        int docValueCount = buffer.count();
+        int valueCount = valueCounts[field];
+        ByteBuffer values = numericValues[field];
+        if ((valueCount + docValueCount) * Long.BYTES > values.capacity()) {
+            int capacity = Math.max(valueCount + docValueCount, values.capacity() / Long.BYTES * 2);
+            values = allocate(capacity * Long.BYTES).put(0, values, 0, valueCount * Long.BYTES);
+            numericValues[field] = values;
+            generation = GENERATIONS.incrementAndGet();
+        }
+        // Longs and doubles both take 8 bytes, the bytes are copied as they are
+        values.put(valueCount * Long.BYTES, buffer.buffer(), 0, docValueCount * Long.BYTES);
+        valueCounts[field] = valueCount + docValueCount;
+    }
+
+    private void loadObjects(int field, ScriptDocValues<?> docValues) {
+        int valueCount = valueCounts[field];
+        int docValueCount = docValues.size();
+        if (valueCount + docValueCount > objectValues[field].length) {
+            objectValues[field] =
+                    Arrays.copyOf(
+                            objectValues[field],
+                            Math.max(valueCount + docValueCount, objectValues[field].length * 2));
+        }
+        for (int i = 0; i < docValueCount; i++) {
+            objectValues[field][valueCount++] = docValues.get(i);
+        }
+        valueCounts[field] = valueCount;
+    }
+
+    /** Sets the query score of the document at the given position of the block. */
+    void setScore(int index, double score) {
+        scores.putDouble(index * Double.BYTES, score);
+    }
+
+    /** Number of documents in the block. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Identifies the current buffers: changes whenever one of them is replaced by a larger one,
+     * and differs between instances.
+     */
+    public int generation() {
+        return generation;
+    }
+
+    public int fieldCount() {
+        return fields.length;
+    }
+
+    public String field(int field) {
+        return fields[field];
+    }
+
+    /**
+     * The {@code struct} format of the values of a field read into a buffer, {@code d} for
+     * doubles and {@code q} for longs, or null if the values are Java objects.
+     */
+    public String format(int field) {
+        return numericFields[field] == null ? null : numericFields[field].format();
+    }
+
+    /** Number of values of all documents of the block. */
+    public int valueCount(int field) {
+        return valueCounts[field];
+    }
+
+    /**
+     * The buffer holding the values of a field read into a buffer, in document order, see {@link
+     * #valueCount}.
+     */
+    public ByteBuffer numericValues(int field) {
+        return numericValues[field];
+    }
+
+    /** The values of a field that is not read into a buffer, in document order. */
+    public List<Object> objectValues(int field) {
+        return Arrays.asList(objectValues[field]).subList(0, valueCounts[field]);
+    }
+
+    /** {@code size() + 1} int offsets, the values of document i start at offset i. */
+    public ByteBuffer offsets(int field) {
+        return offsets[field];
+    }
+
+    /**
+     * {@code size()} doubles, the query scores of the documents of the block. Scores that are not
+     * known when the block is scored are NaN.
+     */
+    public ByteBuffer scores() {
+        return scores;
+    }
+}
@@ -17,26 +17,49 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.HostAccess;
 import org.graalvm.polyglot.SandboxPolicy;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.io.IOAccess;
 import org.graalvm.python.embedding.GraalPyResources;
 import org.graalvm.python.embedding.VirtualFileSystem;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.common.util.concurrent.FutureUtils;
-import org.opensearch.python.phase.SemanticAnalyzer;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.python.PythonContextPool.ContextLease;
+import org.opensearch.python.PythonContextPool.PooledContext;
 import org.opensearch.script.ScriptException;
 import org.opensearch.threadpool.ThreadPool;
 
 public class ExecutionUtils {
     @Getter @Setter private static int TIMEOUT_IN_SECONDS = 20;
     private static final Logger logger = LogManager.getLogger();
-    private static final String MODULE_META_SIMPLE_NAME = "module";
+
+    /** Where Python scripts are executed. */
+    public enum ExecutionMode {
+        /** On the calling search, ingest or transport thread. */
+        INLINE,
+        /** Handed off to the python thread pool, the calling thread waits for the result. */
+        THREAD_POOL
+    }
+
+    public static final Setting<ExecutionMode> EXECUTION_MODE_SETTING =
+            new Setting<>(
+                    "plugins.python.execution_mode",
+                    "inline",
+                    s -> ExecutionMode.valueOf(s.toUpperCase(Locale.ROOT)),
+                    Property.NodeScope);
     // Reference:
     // https://github.com/graalvm/graal-languages-demos/blob/main/graalpy/graalpy-javase-guide/README.md
     static VirtualFileSystem vfs =
@@ -46,6 +69,11 @@ public class ExecutionUtils {
                     .resourceDirectory("GRAALPY-VFS/org.opensearch/lang-python")
                     .build();
     static Path resourcesDir;
+    // Node-wide polyglot engine shared by every context, so that parsed sources, inline caches
+    // and compiled code survive individual contexts. Reference counted because several nodes
+    // may live in the same JVM (e.g. integration tests).
+    private static Engine engine;
+    private static int engineRefCount = 0;
 
     static {
         // Extract VFS resources (Python packages, native extensions) to the cluster's temp
@@ -62,30 +90,92 @@ public class ExecutionUtils {
         }
     }
 
+    /**
+     * Creates the shared engine if this is the first user, otherwise registers another user of
+     * the existing engine. Every call must be paired with {@link #releaseEngine()}.
+     */
+    static synchronized void acquireEngine() {
+        if (engineRefCount++ == 0) {
+            engine =
+                    Engine.newBuilder("python")
+                            .sandbox(SandboxPolicy.TRUSTED)
+                            .allowExperimentalOptions(true)
+                            // Show detailed stack traces for debugging. These are engine level
+                            // options, they cannot be set on contexts bound to a shared engine.
+                            .option("engine.ShowInternalStackFrames", "true")
+                            .option("engine.PrintInternalStackTrace", "true")
+                            .build();
+            logger.info("Created shared Python engine");
+        }
+    }
+
+    /**
+     * Releases one user of the shared engine. The engine is closed once the last user is gone.
+     */
+    static synchronized void releaseEngine() {
+        if (engineRefCount == 0) {
+            return;
+        }
+        if (--engineRefCount == 0) {
+            Engine toClose = engine;
+            engine = null;
+            toClose.close();
+            logger.info("Closed shared Python engine");
+        }
+    }
+
     private static Value executeWorker(
-            Context context,
-            String code,
-            Map<String, ?> params,
-            Map<String, ?> doc,
+            PooledContext pooled,
+            CompiledPythonScript script,
+            Object scriptParams,
+            Object doc,
             Map<String, ?> ctx,
             Double score) {
+        if (doc instanceof PythonDocMap docMap) {
+            docMap.bind(pooled);
+        }
+        final Object params = bindParams(scriptParams, pooled);
+        // Calling the wrapped script is a single call with positional arguments, which avoids
+        // writing the variables into the global namespace and evaluating the module every time
+        Value function = pooled.scriptFunction(script);
+        if (function != null) {
+            return function.execute(params, doc, ctx, score);
+        }
+        Value bindings = pooled.context().getBindings("python");
         if (params != null) {
-            context.getBindings("python").putMember("params", params);
+            bindings.putMember("params", params);
         }
         if (doc != null) {
-            context.getBindings("python").putMember("doc", doc);
+            bindings.putMember("doc", doc);
         }
         if (ctx != null) {
-            context.getBindings("python").putMember("ctx", ctx);
+            bindings.putMember("ctx", ctx);
         }
         if (score != null) {
-            context.getBindings("python").putMember("_score", score);
+            bindings.putMember("_score", score);
+        }
+        return pooled.context().eval(script.source());
+    }
+
+    private static Object bindParams(Object params, PooledContext pooled) {
+        if (params instanceof PythonParams.Leaf leafParams) {
+            return leafParams.bind(pooled);
+        }
+        return params;
+    }
+
+    private static synchronized Context.Builder contextBuilder() {
+        Context.Builder builder = GraalPyResources.contextBuilder(vfs);
+        if (engine != null) {
+            return builder.engine(engine);
         }
-        return context.eval("python", code);
+        // Standalone context, e.g. before the plugin has created its components
+        return builder.option("engine.ShowInternalStackFrames", "true")
+                .option("engine.PrintInternalStackTrace", "true");
     }
 
-    private static Context createContext() {
-        return GraalPyResources.contextBuilder(vfs)
+    static Context createContext() {
+        return contextBuilder()
                 .sandbox(SandboxPolicy.TRUSTED)
                 .allowHostAccess(HostAccess.ALL)
                 // The following options are necessary for importing 3-rd party
@@ -105,9 +195,6 @@ public class ExecutionUtils {
                 .option("python.IsolateNativeModules", "false")
                 // Enable verbose warnings for debugging native extensions
                 .option("python.WarnExperimentalFeatures", "true")
-                // Show detailed stack traces for debugging
-                .option("engine.ShowInternalStackFrames", "true")
-                .option("engine.PrintInternalStackTrace", "true")
                 // The following two options help with debugging python execution & native extension
                 // loading:
                 // .option("log.python.capi.level", "FINE")
@@ -115,46 +202,311 @@ public class ExecutionUtils {
                 .build();
     }
 
+    /**
+     * Executes a script on a context borrowed for this execution only.
+     *
+     * @return the result converted into a Java value of the matching type, see {@link
+     *     PythonResults}
+     */
     public static Object executePython(
-            ThreadPool threadPool,
-            String code,
+            PythonRuntime runtime,
+            CompiledPythonScript script,
             Map<String, ?> params,
             Map<String, ?> doc,
             Map<String, ?> ctx,
             Double score) {
-        SemanticAnalyzer analyzer = new SemanticAnalyzer(code + '\n');
-        analyzer.checkSemantic();
-        final ExecutorService executor = threadPool.executor(ThreadPool.Names.GENERIC);
+        return executeOnPool(
+                runtime,
+                script,
+                pooled -> executeWorker(pooled, script, params, doc, ctx, score),
+                PythonResults::toJava);
+    }
 
-        try (Context context = createContext()) {
-            final Future<Value> futureResult =
-                    executor.submit(() -> executeWorker(context, code, params, doc, ctx, score));
+    /**
+     * Executes a template script on a context borrowed for this execution only.
+     *
+     * @return the string the script returned, the string representation of any other value, or
+     *     null if it returned None
+     */
+    public static String executeTemplate(
+            PythonRuntime runtime, CompiledPythonScript script, Map<String, ?> params) {
+        return executeOnPool(
+                runtime,
+                script,
+                pooled -> executeWorker(pooled, script, params, null, null, null),
+                (pooled, result) -> PythonResults.toText(result));
+    }
 
-            try {
-                Value result = futureResult.get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+    private static <T> T executeOnPool(
+            PythonRuntime runtime,
+            CompiledPythonScript script,
+            Function<PooledContext, Value> worker,
+            BiFunction<PooledContext, Value, T> reader) {
+        // Semantic checks already ran when the script was compiled
+        final PythonContextPool contextPool = runtime.contextPool();
 
-                // Extract the value before closing the context
-                return extractValueBeforeContextClose(result);
+        final PooledContext pooled;
+        try {
+            pooled = contextPool.borrow(borrowTimeout(runtime));
+        } catch (Exception e) {
+            throw asScriptException(e, script.code());
+        }
+        // Only a context whose execution has finished can be handed out again
+        boolean reusable = false;
+        try {
+            // Read the result before the context is reset and handed out again
+            T result = reader.apply(pooled, execute(runtime, pooled, script, worker));
+            reusable = true;
+            return result;
+        } catch (Exception e) {
+            reusable = isReusableAfter(e);
+            throw asScriptException(e, script.code());
+        } finally {
+            contextPool.release(pooled, reusable);
+        }
+    }
 
-            } catch (TimeoutException e) {
-                // future.cancel is a forbidden API
-                FutureUtils.cancel(futureResult);
-                throw wrapWithScriptException(
-                        e,
-                        String.format(
-                                Locale.ROOT,
-                                "Script execution timed out after %d seconds",
-                                TIMEOUT_IN_SECONDS),
-                        code);
-            } catch (ExecutionException | InterruptedException e) {
-                throw wrapWithScriptException(e, code);
+    /**
+     * Executes a script on the context pinned to a lease, which saves borrowing and warming up a
+     * context for every document of a segment.
+     *
+     * @return the result converted into a Java value of the matching type, see {@link
+     *     PythonResults}
+     */
+    public static Object executePython(
+            PythonRuntime runtime,
+            ContextLease lease,
+            CompiledPythonScript script,
+            Object params,
+            Object doc,
+            Map<String, ?> ctx,
+            Double score) {
+        return executeOnLease(
+                runtime,
+                lease,
+                script,
+                pooled -> executeWorker(pooled, script, params, doc, ctx, score),
+                PythonResults::toJava);
+    }
+
+    /**
+     * Executes a score script on the context pinned to a lease. Unlike {@link #executePython},
+     * the score is read as a primitive without boxing it.
+     *
+     * @return the score, 0 if the script returned None
+     */
+    public static double executeScore(
+            PythonRuntime runtime,
+            ContextLease lease,
+            CompiledPythonScript script,
+            Object params,
+            Object doc,
+            Double score) {
+        final PooledContext pooled = acquire(runtime, lease, script);
+        boolean reusable = false;
+        try {
+            double result =
+                    PythonResults.toScore(
+                            execute(
+                                    runtime,
+                                    pooled,
+                                    script,
+                                    p -> executeWorker(p, script, params, doc, null, score)));
+            reusable = true;
+            return result;
+        } catch (Exception e) {
+            reusable = isReusableAfter(e);
+            throw asScriptException(e, script.code());
+        } finally {
+            lease.release(reusable);
+        }
+    }
+
+    /**
+     * Scores a block of documents with the batch function of a script.
+     *
+     * @param functionName name of the module level function that scores a block
+     * @param columns the doc values of the documents of the block
+     * @param params the script parameters
+     * @return one score per document of the block
+     */
+    public static double[] executeBatch(
+            PythonRuntime runtime,
+            ContextLease lease,
+            CompiledPythonScript script,
+            String functionName,
+            DocValueColumns columns,
+            Object params) {
+        return executeOnLease(
+                runtime,
+                lease,
+                script,
+                pooled ->
+                        pooled.batchFunction(script, functionName)
+                                .execute(columns, bindParams(params, pooled)),
+                PythonResults::toDoubles);
+    }
+
+    private static <T> T executeOnLease(
+            PythonRuntime runtime,
+            ContextLease lease,
+            CompiledPythonScript script,
+            Function<PooledContext, Value> worker,
+            BiFunction<PooledContext, Value, T> reader) {
+        final PooledContext pooled = acquire(runtime, lease, script);
+        boolean reusable = false;
+        try {
+            // Read the result before the lease lets the context go
+            T result = reader.apply(pooled, execute(runtime, pooled, script, worker));
+            reusable = true;
+            return result;
+        } catch (Exception e) {
+            reusable = isReusableAfter(e);
+            throw asScriptException(e, script.code());
+        } finally {
+            lease.release(reusable);
+        }
+    }
+
+    private static PooledContext acquire(
+            PythonRuntime runtime, ContextLease lease, CompiledPythonScript script) {
+        try {
+            return lease.acquire(borrowTimeout(runtime));
+        } catch (Exception e) {
+            // A pool that has no free context in time rejects the execution as is
+            throw asScriptException(e, script.code());
+        }
+    }
+
+    /**
+     * How long an execution waits for a free context. Inline executions hold a search or ingest
+     * thread while they wait, so they fail fast instead of waiting up to the script timeout.
+     */
+    private static TimeValue borrowTimeout(PythonRuntime runtime) {
+        return runtime.executionMode() == ExecutionMode.INLINE
+                ? runtime.borrowTimeout()
+                : TimeValue.timeValueSeconds(TIMEOUT_IN_SECONDS);
+    }
+
+    /**
+     * Creates a lease for a script instance and warms it up by binding a context and preparing
+     * the script function on it, so that the first document does not pay for it.
+     */
+    public static ContextLease leaseContext(PythonRuntime runtime, CompiledPythonScript script) {
+        return leaseContext(runtime, script, pooled -> pooled.scriptFunction(script));
+    }
+
+    /**
+     * Creates a lease for a script instance and warms it up with the given function.
+     *
+     * @param warmup prepares whatever the executions of the script need on the bound context
+     */
+    public static ContextLease leaseContext(
+            PythonRuntime runtime, CompiledPythonScript script, Consumer<PooledContext> warmup) {
+        final ContextLease lease = runtime.contextPool().newLease();
+        try {
+            PooledContext pooled = lease.acquire(borrowTimeout(runtime));
+            boolean reusable = false;
+            try {
+                warmup.accept(pooled);
+                reusable = true;
+            } finally {
+                lease.release(reusable);
             }
-        } catch (ScriptException e) {
-            // Throw script exception as is
-            throw e;
         } catch (Exception e) {
-            throw wrapWithScriptException(e, code);
+            // The first execution binds a context instead and reports any error to the user
+            logger.debug("Failed to warm up a Python context for script [{}]", script.name(), e);
         }
+        return lease;
+    }
+
+    private static Value execute(
+            PythonRuntime runtime,
+            PooledContext pooled,
+            CompiledPythonScript script,
+            Function<PooledContext, Value> worker)
+            throws InterruptedException {
+        return switch (runtime.executionMode()) {
+            case INLINE -> executeInline(pooled, script, worker);
+            case THREAD_POOL -> executeOnThreadPool(runtime.threadPool(), pooled, script, worker);
+        };
+    }
+
+    private static boolean isReusableAfter(Exception e) {
+        if (e instanceof OpenSearchRejectedExecutionException) {
+            // The python thread pool is saturated, nothing ran on the context
+            return true;
+        }
+        if (e instanceof IllegalArgumentException) {
+            // The script finished but its result could not be converted
+            return true;
+        }
+        // The script raised an error, the context can still be reused unless it timed out
+        return e instanceof ScriptException && !(e.getCause() instanceof TimeoutException);
+    }
+
+    private static RuntimeException asScriptException(Exception e, String code) {
+        if (e instanceof OpenSearchRejectedExecutionException || e instanceof ScriptException) {
+            // Throw script exception as is
+            return (RuntimeException) e;
+        }
+        return wrapWithScriptException(e, code);
+    }
+
+    /**
+     * Runs the script on the calling thread. The pool's watchdog cancels the execution if it runs
+     * past the timeout, so no thread handoff is needed to enforce it.
+     */
+    private static Value executeInline(
+            PooledContext pooled,
+            CompiledPythonScript script,
+            Function<PooledContext, Value> worker) {
+        pooled.startExecution(TimeValue.timeValueSeconds(TIMEOUT_IN_SECONDS));
+        try {
+            Value result = worker.apply(pooled);
+            // Even if the watchdog fired in the meantime, the result is complete
+            pooled.finishExecution();
+            return result;
+        } catch (RuntimeException e) {
+            if (pooled.finishExecution()) {
+                throw wrapWithScriptException(e, script.code());
+            }
+            throw timeoutException(new TimeoutException(e.getMessage()), script.code());
+        }
+    }
+
+    private static Value executeOnThreadPool(
+            ThreadPool threadPool,
+            PooledContext pooled,
+            CompiledPythonScript script,
+            Function<PooledContext, Value> worker)
+            throws InterruptedException {
+        // Throws OpenSearchRejectedExecutionException once the bounded queue is full
+        final ExecutorService executor =
+                threadPool.executor(PythonModulePlugin.PYTHON_THREAD_POOL_NAME);
+        final Future<Value> futureResult =
+                executor.submit(() -> worker.apply(pooled));
+
+        try {
+            return futureResult.get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // future.cancel is a forbidden API. The context is closed when it is released, which
+            // cancels the script that is still running.
+            FutureUtils.cancel(futureResult);
+            throw timeoutException(e, script.code());
+        } catch (ExecutionException e) {
+            throw wrapWithScriptException(e, script.code());
+        }
+    }
+
+    private static ScriptException timeoutException(TimeoutException e, String code) {
+        return wrapWithScriptException(
+                e,
+                String.format(
+                        Locale.ROOT,
+                        "Script execution timed out after %d seconds",
+                        TIMEOUT_IN_SECONDS),
+                code);
     }
 
     private static ScriptException wrapWithScriptException(Exception e, String code) {
@@ -175,32 +527,4 @@ public class ExecutionUtils {
                 code,
                 "python");
     }
-
-    private static Object extractValueBeforeContextClose(Value result) {
-        if (result == null || result.isNull()) {
-            return null;
-        }
-
-        try {
-            // If it's a module object, treat it as None/empty
-            if (result.getMetaObject() != null
-                    && MODULE_META_SIMPLE_NAME.equals(result.getMetaObject().getMetaSimpleName())) {
-                return null;
-            }
-
-            if (result.isString()) {
-                return result.asString();
-            }
-            if (result.isNumber()) {
-                return result.asDouble();
-            }
-            if (result.isBoolean()) {
-                return result.asBoolean();
-            }
-            return result.toString();
-        } catch (Exception e) {
-            logger.warn("Error extracting value from result: {}", e.getMessage());
-            return result.toString();
-        }
-    }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.cache.RemovalNotification;
+import org.opensearch.common.cache.RemovalReason;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/**
+ * A node level cache of field script results, keyed by script, parameters, segment and document.
+ *
+ * <p>The result of a deterministic field script only depends on its parameters and on the
+ * document, and the documents of a segment never change. Results are kept in an LRU cache bounded
+ * by their estimated size in bytes, and the results computed for a segment are dropped when the
+ * segment is closed. Lists and maps are cached as unmodifiable copies, since every execution that
+ * hits the cache shares them. The cache is disabled unless {@link #SIZE_SETTING} is set.
+ */
+public class FieldResultCache implements Closeable {
+    public static final Setting<ByteSizeValue> SIZE_SETTING =
+            Setting.byteSizeSetting(
+                    "plugins.python.field_cache.size", ByteSizeValue.ZERO, Property.NodeScope);
+
+    // Stands in for None results, the cache does not store nulls
+    private static final Object NONE = new Object();
+    private static final long KEY_BYTES = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    private final long maxBytes;
+    // Null if the cache is disabled
+    private final Cache<Key, Object> cache;
+    // The cached keys of every segment whose close is listened to, so that closing a segment does
+    // not scan the whole cache
+    private final Map<IndexReader.CacheKey, Set<Key>> segments = new ConcurrentHashMap<>();
+
+    public FieldResultCache(Settings settings) {
+        this.maxBytes = SIZE_SETTING.get(settings).getBytes();
+        this.cache =
+                maxBytes == 0
+                        ? null
+                        : CacheBuilder.<Key, Object>builder()
+                                .setMaximumWeight(maxBytes)
+                                .weigher(FieldResultCache::weigh)
+                                .removalListener(this::onRemoval)
+                                .build();
+    }
+
+    private void onRemoval(RemovalNotification<Key, Object> notification) {
+        if (notification.getRemovalReason() == RemovalReason.REPLACED) {
+            // The key is still cached
+            return;
+        }
+        Key key = notification.getKey();
+        Set<Key> keys = segments.get(key.segment());
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    private static long weigh(Key key, Object result) {
+        return KEY_BYTES + (result == NONE ? 0 : RamUsageEstimator.sizeOfObject(result));
+    }
+
+    /**
+     * Identifies a script along with its parameters. Created once per search, so that the
+     * parameters are only hashed once.
+     *
+     * @param script the script
+     * @param params the script parameters
+     * @return the key the results of the script are cached with
+     */
+    public static ScriptKey scriptKey(CompiledPythonScript script, Map<String, ?> params) {
+        return new ScriptKey(script.name(), params);
+    }
+
+    /**
+     * Starts caching the results computed for the documents of a segment.
+     *
+     * @param ctx the segment
+     * @return the key the results of the segment are cached with, or null if they cannot be
+     *     cached
+     */
+    public IndexReader.CacheKey segment(LeafReaderContext ctx) {
+        if (cache == null) {
+            return null;
+        }
+        IndexReader.CacheHelper helper = ctx.reader().getCoreCacheHelper();
+        if (helper == null) {
+            return null;
+        }
+        IndexReader.CacheKey segment = helper.getKey();
+        if (segments.putIfAbsent(segment, ConcurrentHashMap.newKeySet()) == null) {
+            helper.addClosedListener(this::invalidate);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the cached result of a script for a document, computing it on a miss.
+     *
+     * @param script the script and its parameters
+     * @param segment the key returned by {@link #segment}
+     * @param doc the document id within the segment
+     * @param compute computes the result
+     * @return the result, which is shared by all executions that hit the cache and therefore
+     *     unmodifiable if it is a list or a map
+     */
+    public Object getOrCompute(
+            ScriptKey script, IndexReader.CacheKey segment, int doc, Supplier<Object> compute) {
+        Key key = new Key(script, segment, doc);
+        Object result = cache.get(key);
+        if (result == null) {
+            result = unmodifiable(compute.get());
+            Set<Key> keys = segments.get(segment);
+            // Null if the segment was closed, which does not happen while it is searched
+            if (keys != null) {
+                keys.add(key);
+                cache.put(key, result == null ? NONE : result);
+            }
+            return result;
+        }
+        return result == NONE ? null : result;
+    }
+
+    private void invalidate(IndexReader.CacheKey segment) {
+        Set<Key> keys = segments.remove(segment);
+        if (keys != null) {
+            for (Key key : keys) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    /** Copies the lists and maps of a result, recursively, into unmodifiable ones. */
+    private static Object unmodifiable(Object value) {
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                copy.add(unmodifiable(item));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), unmodifiable(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        return value;
+    }
+
+    /** Writes the size and the hit and miss counts of the cache. */
+    public XContentBuilder toXContent(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        builder.field("enabled", cache != null);
+        builder.field("max_size_in_bytes", maxBytes);
+        if (cache != null) {
+            Cache.CacheStats stats = cache.stats();
+            builder.field("size_in_bytes", cache.weight());
+            builder.field("count", cache.count());
+            builder.field("hits", stats.getHits());
+            builder.field("misses", stats.getMisses());
+            builder.field("evictions", stats.getEvictions());
+        }
+        return builder.endObject();
+    }
+
+    @Override
+    public void close() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /** A script along with its parameters. */
+    public static final class ScriptKey {
+        private final String name;
+        private final Map<String, ?> params;
+        private final int hash;
+
+        private ScriptKey(String name, Map<String, ?> params) {
+            this.name = name;
+            this.params = params;
+            this.hash = Objects.hash(name, params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ScriptKey other
+                    && hash == other.hash
+                    && name.equals(other.name)
+                    && Objects.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private record Key(ScriptKey script, IndexReader.CacheKey segment, int doc) {}
+}
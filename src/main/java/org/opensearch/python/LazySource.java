@@ -0,0 +1,201 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyHashMap;
+import org.graalvm.polyglot.proxy.ProxyIterator;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.MediaType;
+import org.opensearch.core.xcontent.MediaTypeRegistry;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.index.fieldvisitor.FieldsVisitor;
+
+/**
+ * The {@code params['_source']} variable of leaf scripts. Instead of parsing the whole source of
+ * every document into a map, the stored source is streamed and only the top-level keys that are
+ * read are parsed; the values of all other keys are skipped.
+ *
+ * <p>The keys a script reads with a string literal are known when it is compiled, see {@link
+ * CompiledPythonScript#sourceKeys()}. They are parsed together on the first access of a document,
+ * so the source is streamed once per document in the common case. Iterating the source parses it
+ * completely.
+ *
+ * <p>Instances belong to a single leaf script and are not thread safe.
+ */
+public final class LazySource implements ProxyHashMap {
+    // Marks keys that are not in the source of the current document
+    private static final Object ABSENT = new Object();
+
+    private final LeafReaderContext leaf;
+    private final Set<String> plannedKeys;
+    // The generic source lookup, for documents without stored source
+    private final Supplier<Map<String, Object>> sourceLookup;
+    private StoredFields storedFields = null;
+    private final Map<String, Object> values = new HashMap<>();
+    private BytesReference bytes = null;
+    private MediaType mediaType = null;
+    private Map<String, Object> fullSource = null;
+    private int docId = -1;
+    private int loadedDoc = -1;
+
+    /**
+     * @param plannedKeys the keys to parse on the first access of a document
+     * @param sourceLookup the source map of the generic lookup, positioned on the same document
+     */
+    public LazySource(
+            LeafReaderContext leaf,
+            Set<String> plannedKeys,
+            Supplier<Map<String, Object>> sourceLookup) {
+        this.leaf = leaf;
+        this.plannedKeys = plannedKeys;
+        this.sourceLookup = sourceLookup;
+    }
+
+    public void setDocument(int docId) {
+        this.docId = docId;
+    }
+
+    @Override
+    public long getHashSize() {
+        return fullSource().size();
+    }
+
+    @Override
+    public boolean hasHashEntry(Value key) {
+        return key.isString() && get(key.asString()) != ABSENT;
+    }
+
+    @Override
+    public Object getHashValue(Value key) {
+        Object value = get(key.asString());
+        return value == ABSENT ? null : value;
+    }
+
+    @Override
+    public void putHashEntry(Value key, Value value) {
+        throw new UnsupportedOperationException("_source is read-only");
+    }
+
+    @Override
+    public Object getHashEntriesIterator() {
+        return ProxyIterator.from(
+                fullSource().entrySet().stream()
+                        .map(entry -> ProxyArray.fromArray(entry.getKey(), entry.getValue()))
+                        .iterator());
+    }
+
+    private Object get(String key) {
+        ensureLoaded();
+        Object value = values.get(key);
+        if (value != null) {
+            return value;
+        }
+        if (values.containsKey(key)) {
+            // A null value in the source
+            return null;
+        }
+        if (fullSource != null) {
+            return fullSource.containsKey(key) ? fullSource.get(key) : ABSENT;
+        }
+        Set<String> keys = new HashSet<>(plannedKeys);
+        keys.add(key);
+        keys.removeAll(values.keySet());
+        parse(keys);
+        return values.get(key);
+    }
+
+    private void ensureLoaded() {
+        if (loadedDoc == docId) {
+            return;
+        }
+        values.clear();
+        fullSource = null;
+        bytes = null;
+        try {
+            if (storedFields == null) {
+                storedFields = leaf.reader().storedFields();
+            }
+            FieldsVisitor visitor = new FieldsVisitor(true);
+            storedFields.document(docId, visitor);
+            bytes = visitor.source();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (bytes == null) {
+            // No stored source, e.g. a derived source, the generic lookup knows how to build it
+            fullSource = sourceLookup.get();
+        } else {
+            mediaType = MediaTypeRegistry.xContentType(bytes);
+        }
+        loadedDoc = docId;
+    }
+
+    /** Parses the given keys in a single pass, skipping the values of all other keys. */
+    private void parse(Set<String> keys) {
+        try (XContentParser parser =
+                XContentHelper.createParser(
+                        NamedXContentRegistry.EMPTY,
+                        DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                        bytes,
+                        mediaType)) {
+            int remaining = keys.size();
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                while (remaining > 0 && parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                    String name = parser.currentName();
+                    XContentParser.Token token = parser.nextToken();
+                    if (keys.contains(name) && !values.containsKey(name)) {
+                        values.put(name, readValue(parser, token));
+                        remaining--;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (String key : keys) {
+            if (!values.containsKey(key)) {
+                values.put(key, ABSENT);
+            }
+        }
+    }
+
+    private static Object readValue(XContentParser parser, XContentParser.Token token)
+            throws IOException {
+        return switch (token) {
+            case START_OBJECT -> parser.map();
+            case START_ARRAY -> parser.list();
+            case VALUE_STRING -> parser.text();
+            case VALUE_NUMBER -> parser.numberValue();
+            case VALUE_BOOLEAN -> parser.booleanValue();
+            case VALUE_EMBEDDED_OBJECT -> parser.binaryValue();
+            default -> null;
+        };
+    }
+
+    private Map<String, Object> fullSource() {
+        ensureLoaded();
+        if (fullSource == null) {
+            fullSource = XContentHelper.convertToMap(bytes, false, mediaType).v2();
+        }
+        return fullSource;
+    }
+}
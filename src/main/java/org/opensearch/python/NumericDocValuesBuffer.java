@@ -0,0 +1,191 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Supplier;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.opensearch.index.fielddata.IndexFieldData;
+import org.opensearch.index.fielddata.IndexNumericFieldData;
+import org.opensearch.index.fielddata.IndexNumericFieldData.NumericType;
+import org.opensearch.index.fielddata.LeafNumericFieldData;
+import org.opensearch.index.fielddata.ScriptDocValues;
+import org.opensearch.index.fielddata.SortedNumericDoubleValues;
+
+/**
+ * The numeric doc values of one field for the current document, read straight from the field data
+ * into a reused native-order buffer. Python wraps the buffer with a {@code memoryview}, so values
+ * reach Python as primitives without boxing every value into a Java {@link Long} or {@link Double}
+ * first, and {@code numpy} can use them without copying.
+ *
+ * <p>Values are loaded lazily, the first time Python asks for them after the document changed.
+ * Instances belong to a single leaf script and are not thread safe.
+ */
+public final class NumericDocValuesBuffer {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final String kind;
+    private final LeafNumericFieldData fieldData;
+    private final boolean floatingPoint;
+    // Element access for kinds whose values are objects on the Java side, e.g. dates
+    private final Supplier<ScriptDocValues<?>> scriptDocValues;
+    private SortedNumericDocValues longValues = null;
+    private SortedNumericDoubleValues doubleValues = null;
+    private ByteBuffer buffer = allocate(INITIAL_CAPACITY);
+    // Incremented whenever the buffer is replaced, so that Python knows to wrap it again
+    private int generation = 0;
+    private int count = 0;
+    private int doc = -1;
+    private int loadedDoc = -1;
+    private int iteratorDoc = -1;
+
+    private NumericDocValuesBuffer(
+            String kind,
+            LeafNumericFieldData fieldData,
+            boolean floatingPoint,
+            Supplier<ScriptDocValues<?>> scriptDocValues) {
+        this.kind = kind;
+        this.fieldData = fieldData;
+        this.floatingPoint = floatingPoint;
+        this.scriptDocValues = scriptDocValues;
+    }
+
+    /**
+     * Creates the buffer for a field of a segment.
+     *
+     * @param fieldData the field data of the field
+     * @param scriptDocValues the doc values of the field positioned on the current document, used
+     *     for element access to dates
+     * @return the buffer, or null if the field does not have numeric doc values that fit into a
+     *     buffer of longs or doubles, e.g. unsigned longs
+     */
+    static NumericDocValuesBuffer create(
+            IndexFieldData<?> fieldData,
+            LeafReaderContext leaf,
+            Supplier<ScriptDocValues<?>> scriptDocValues) {
+        if (!(fieldData instanceof IndexNumericFieldData numericFieldData)) {
+            return null;
+        }
+        NumericType numericType = numericFieldData.getNumericType();
+        String kind =
+                switch (numericType) {
+                    case BOOLEAN -> "boolean";
+                    case DATE, DATE_NANOSECONDS -> "date";
+                    // Values above Long.MAX_VALUE would be negative in a buffer of longs, so
+                    // unsigned longs are read through ScriptDocValues as BigIntegers instead
+                    case UNSIGNED_LONG -> null;
+                    default -> numericType.isFloatingPoint() ? "double" : "long";
+                };
+        if (kind == null) {
+            return null;
+        }
+        return new NumericDocValuesBuffer(
+                kind, numericFieldData.load(leaf), numericType.isFloatingPoint(), scriptDocValues);
+    }
+
+    public void setDocument(int doc) {
+        this.doc = doc;
+    }
+
+    /** One of {@code long}, {@code double}, {@code boolean} or {@code date}. */
+    public String kind() {
+        return kind;
+    }
+
+    /** The {@code struct} format of the values, {@code d} for doubles and {@code q} otherwise. */
+    public String format() {
+        return floatingPoint ? "d" : "q";
+    }
+
+    /**
+     * The buffer holding the values of the current document, see {@link #count()}. Booleans are
+     * stored as 0 and 1, dates as milliseconds or nanoseconds since the epoch.
+     */
+    public ByteBuffer buffer() {
+        ensureLoaded();
+        return buffer;
+    }
+
+    public int generation() {
+        ensureLoaded();
+        return generation;
+    }
+
+    /** Number of values of the current document. */
+    public int count() {
+        ensureLoaded();
+        return count;
+    }
+
+    /** The value as returned by {@link ScriptDocValues}, e.g. the date object of a date field. */
+    public Object element(int index) {
+        return scriptDocValues.get().get(index);
+    }
+
+    private void ensureLoaded() {
+        if (loadedDoc == doc) {
+            return;
+        }
+        try {
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void load() throws IOException {
+        if (doc < iteratorDoc) {
+            // Doc values only iterate forward, going back needs fresh iterators
+            longValues = null;
+            doubleValues = null;
+        }
+        iteratorDoc = doc;
+        count = 0;
+        if (floatingPoint) {
+            if (doubleValues == null) {
+                doubleValues = fieldData.getDoubleValues();
+            }
+            if (doubleValues.advanceExact(doc)) {
+                int valueCount = doubleValues.docValueCount();
+                ensureCapacity(valueCount);
+                for (int i = 0; i < valueCount; i++) {
+                    buffer.putDouble(i * Double.BYTES, doubleValues.nextValue());
+                }
+                count = valueCount;
+            }
+        } else {
+            if (longValues == null) {
+                longValues = fieldData.getLongValues();
+            }
+            if (longValues.advanceExact(doc)) {
+                int valueCount = longValues.docValueCount();
+                ensureCapacity(valueCount);
+                for (int i = 0; i < valueCount; i++) {
+                    buffer.putLong(i * Long.BYTES, longValues.nextValue());
+                }
+                count = valueCount;
+            }
+        }
+        loadedDoc = doc;
+    }
+
+    // Direct, so the memoryviews of Python read the same memory Java writes to
+    private static ByteBuffer allocate(int valueCount) {
+        return ByteBuffer.allocateDirect(valueCount * Long.BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private void ensureCapacity(int valueCount) {
+        if (valueCount * Long.BYTES > buffer.capacity()) {
+            int capacity = Math.max(valueCount, buffer.capacity() / Long.BYTES * 2);
+            buffer = allocate(capacity);
+            generation++;
+        }
+    }
+}
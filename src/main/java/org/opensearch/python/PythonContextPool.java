@@ -0,0 +1,614 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.threadpool.Scheduler;
+import org.opensearch.threadpool.ThreadPool;
+
+/**
+ * A bounded pool of Python contexts with borrow/return semantics. Contexts can also be pinned to a
+ * script instance through a {@link ContextLease}.
+ *
+ * <p>Creating a context is by far the most expensive part of running a short script, so contexts
+ * are kept around and handed out again. A context is returned to the pool only after its global
+ * state has been restored to a baseline snapshot, so that one execution can never observe the
+ * state of another one; contexts that cannot be restored are discarded. Contexts are recycled after
+ * a configurable number of uses and evicted after staying idle for too long.
+ */
+public class PythonContextPool implements Closeable {
+    private static final Logger logger = LogManager.getLogger();
+
+    public static final Setting<Integer> POOL_SIZE_SETTING =
+            new Setting<>(
+                    "plugins.python.context_pool.size",
+                    s -> Integer.toString(OpenSearchExecutors.allocatedProcessors(s)),
+                    s -> Setting.parseInt(s, 1, "plugins.python.context_pool.size"),
+                    Property.NodeScope);
+    public static final Setting<TimeValue> IDLE_TIMEOUT_SETTING =
+            Setting.positiveTimeSetting(
+                    "plugins.python.context_pool.idle_timeout",
+                    TimeValue.timeValueMinutes(5),
+                    Property.NodeScope);
+    // How long inline executions, which run on search and ingest threads, wait for a free context
+    // before they are rejected. Executions in thread_pool mode wait up to the script timeout.
+    public static final Setting<TimeValue> BORROW_TIMEOUT_SETTING =
+            Setting.timeSetting(
+                    "plugins.python.context_pool.borrow_timeout",
+                    TimeValue.timeValueMillis(100),
+                    TimeValue.ZERO,
+                    Property.NodeScope);
+    // 0 means that contexts are never recycled because of their number of uses
+    public static final Setting<Integer> MAX_USES_SETTING =
+            Setting.intSetting(
+                    "plugins.python.context_pool.max_uses", 10_000, 0, Property.NodeScope);
+
+    // How often running executions are checked against their deadline
+    private static final TimeValue WATCHDOG_INTERVAL = TimeValue.timeValueMillis(200);
+    // Contexts pinned by a lease go back to the pool once the lease stopped using them this long
+    private static final long LEASE_IDLE_TIMEOUT_NANOS = TimeValue.timeValueMillis(500).nanos();
+    private static final String BOOTSTRAP_FUNCTION = "_opensearch_bootstrap";
+    private static final Source BOOTSTRAP_SOURCE = loadBootstrapSource();
+
+    private final Supplier<Context> contextFactory;
+    private final int size;
+    private final long idleTimeoutNanos;
+    private final int maxUses;
+    // Permits bound the number of contexts that exist at the same time, borrowed or idle
+    private final Semaphore permits;
+    // Used as a stack so that the most recently used, and thus warmest, context is reused first
+    private final Deque<PooledContext> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledContext> borrowed = ConcurrentHashMap.newKeySet();
+    private final Scheduler.Cancellable evictionTask;
+    private final Scheduler.Cancellable watchdogTask;
+    private volatile boolean closed = false;
+
+    public PythonContextPool(
+            Settings settings, ThreadPool threadPool, Supplier<Context> contextFactory) {
+        this.contextFactory = contextFactory;
+        this.size = POOL_SIZE_SETTING.get(settings);
+        TimeValue idleTimeout = IDLE_TIMEOUT_SETTING.get(settings);
+        this.idleTimeoutNanos = idleTimeout.nanos();
+        this.maxUses = MAX_USES_SETTING.get(settings);
+        this.permits = new Semaphore(size, true);
+        this.evictionTask =
+                threadPool.scheduleWithFixedDelay(
+                        this::evictIdle, idleTimeout, ThreadPool.Names.GENERIC);
+        this.watchdogTask =
+                threadPool.scheduleWithFixedDelay(
+                        this::runWatchdog, WATCHDOG_INTERVAL, ThreadPool.Names.GENERIC);
+    }
+
+    /**
+     * Creates a lease that pins a context to a single script instance until the instance stops
+     * using it.
+     */
+    public ContextLease newLease() {
+        return new ContextLease(this);
+    }
+
+    /**
+     * Borrows a context, creating one if no idle context is available. When all contexts are in
+     * use, a context pinned by a lease that is not executing anything is taken over, otherwise
+     * this waits up to the given timeout.
+     *
+     * @param timeout how long to wait for a context to become available
+     * @return a context that is exclusively owned by the caller until it is released
+     */
+    public PooledContext borrow(TimeValue timeout) {
+        ensureOpen();
+        boolean permitted = permits.tryAcquire();
+        if (!permitted) {
+            PooledContext reclaimed = reclaimFromLease(System.nanoTime(), 0);
+            if (reclaimed != null) {
+                // The permit of the reclaimed context is handed over along with it
+                if (isReusable(reclaimed)) {
+                    reclaimed.uses++;
+                    return reclaimed;
+                }
+                borrowed.remove(reclaimed);
+                reclaimed.close();
+                permitted = true;
+            }
+        }
+        try {
+            if (!permitted && !permits.tryAcquire(timeout.nanos(), TimeUnit.NANOSECONDS)) {
+                throw new OpenSearchRejectedExecutionException(
+                        "All ["
+                                + size
+                                + "] Python contexts are in use, waited for ["
+                                + timeout
+                                + "]");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Python context", e);
+        }
+        try {
+            ensureOpen();
+            long now = System.nanoTime();
+            PooledContext pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isIdleExpired(pooled, now)) {
+                    pooled.close();
+                    continue;
+                }
+                pooled.uses++;
+                borrowed.add(pooled);
+                return pooled;
+            }
+            pooled = new PooledContext(contextFactory.get());
+            pooled.uses++;
+            borrowed.add(pooled);
+            return pooled;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed context to the pool.
+     *
+     * @param pooled the context to return
+     * @param reusable false if the context may be in an inconsistent state, e.g. because an
+     *     execution is still running, in which case it is closed instead of being reused. Contexts
+     *     cancelled by the watchdog are never reused.
+     */
+    public void release(PooledContext pooled, boolean reusable) {
+        borrowed.remove(pooled);
+        try {
+            if (reusable && isReusable(pooled)) {
+                pooled.lastReleasedNanos = System.nanoTime();
+                idle.offerFirst(pooled);
+            } else {
+                pooled.close();
+            }
+        } finally {
+            permits.release();
+        }
+        if (closed && idle.remove(pooled)) {
+            // Lost a race against close()
+            pooled.close();
+        }
+    }
+
+    /** Closes contexts that have not been used for longer than the idle timeout. */
+    void evictIdle() {
+        long now = System.nanoTime();
+        for (PooledContext pooled : idle) {
+            // removeFirstOccurrence fails if a concurrent borrow took the context in the meantime
+            if (isIdleExpired(pooled, now) && idle.removeFirstOccurrence(pooled)) {
+                logger.debug("Evicting Python context idle for more than [{}]ns", idleTimeoutNanos);
+                pooled.close();
+            }
+        }
+    }
+
+    /**
+     * Cancels executions that are still running past their deadline. Cancelling closes the
+     * context, which makes the running script fail on its own thread without any thread handoff.
+     * Also returns contexts that leases stopped using to the pool.
+     */
+    void runWatchdog() {
+        long now = System.nanoTime();
+        for (PooledContext pooled : borrowed) {
+            if (pooled.isOverdue(now) && pooled.cancel()) {
+                logger.debug("Cancelled Python execution running past its deadline");
+            } else if (pooled.tryReclaimFromLease(now, LEASE_IDLE_TIMEOUT_NANOS)) {
+                release(pooled, true);
+            }
+        }
+    }
+
+    private PooledContext reclaimFromLease(long now, long minIdleNanos) {
+        for (PooledContext pooled : borrowed) {
+            if (pooled.tryReclaimFromLease(now, minIdleNanos)) {
+                return pooled;
+            }
+        }
+        return null;
+    }
+
+    /** Number of contexts that are currently idle in the pool. */
+    public int idleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictionTask.cancel();
+        watchdogTask.cancel();
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.close();
+        }
+        // Contexts pinned by leases that are not executing anything are not coming back
+        while ((pooled = reclaimFromLease(System.nanoTime(), 0)) != null) {
+            borrowed.remove(pooled);
+            pooled.close();
+        }
+    }
+
+    private static Source loadBootstrapSource() {
+        try {
+            return Source.newBuilder(
+                            "python",
+                            Objects.requireNonNull(
+                                    PythonContextPool.class.getResource("bootstrap.py")))
+                    .name("opensearch_bootstrap.py")
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the Python bootstrap script", e);
+        }
+    }
+
+    private boolean isIdleExpired(PooledContext pooled, long now) {
+        return now - pooled.lastReleasedNanos > idleTimeoutNanos;
+    }
+
+    private boolean isWornOut(PooledContext pooled) {
+        return maxUses > 0 && pooled.uses >= maxUses;
+    }
+
+    /**
+     * Whether a context that was in use can be handed out again, which resets it. Applies to
+     * contexts released to the pool as well as to contexts reclaimed from a lease.
+     */
+    private boolean isReusable(PooledContext pooled) {
+        return !closed && !pooled.isCancelled() && !isWornOut(pooled) && pooled.reset();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Python context pool is closed");
+        }
+    }
+
+    /** A context owned by the pool, along with the bookkeeping needed to reuse it safely. */
+    public static final class PooledContext {
+        private static final int IDLE = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+        // Scripts wrapped into a function are kept per context, the least recently used first
+        private static final int MAX_SCRIPT_FUNCTIONS = 256;
+        private static final Source PYTHON_DICT = Source.create(PythonScriptEngine.NAME, "{}");
+        private static final Source PYTHON_LIST = Source.create(PythonScriptEngine.NAME, "[]");
+
+        private final Context context;
+        // Python helpers defined by the bootstrap script, see bootstrap.py
+        private final Value restoreFunction;
+        private final Value wrapFunction;
+        private final Value batchFunction;
+        private final Value docValuesClass;
+        private final Value paramsClass;
+        private final Value freezeFunction;
+        private final Value packFunction;
+        // Keyed by script name. A null Value marks scripts that cannot be wrapped.
+        private final Map<String, Value> scriptFunctions =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Value> eldest) {
+                        return size() > MAX_SCRIPT_FUNCTIONS;
+                    }
+                };
+        // The script and batch functions run since the last reset, usually at most one
+        private final List<Value> runFunctions = new ArrayList<>(1);
+        // Whether a script was evaluated as is since the last reset, so its code is not known
+        private boolean evaluatedAsIs = false;
+        // Execution state, shared with the watchdog thread
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private volatile long deadlineNanos = 0;
+        // Token of the lease the context is pinned to while the lease is not executing anything.
+        // Tokens are unique per binding, so a lease can never take back a context that has been
+        // reclaimed and handed to someone else in the meantime.
+        private final AtomicReference<Object> leaseToken = new AtomicReference<>();
+        private volatile long leaseIdleSinceNanos = 0;
+        private int uses = 0;
+        private long lastReleasedNanos = System.nanoTime();
+
+        PooledContext(Context context) {
+            this.context = context;
+            try {
+                context.eval(BOOTSTRAP_SOURCE);
+                Value bindings = context.getBindings("python");
+                Value helpers = bindings.getMember(BOOTSTRAP_FUNCTION).execute();
+                bindings.removeMember(BOOTSTRAP_FUNCTION);
+                this.restoreFunction = helpers.getMember("restore");
+                this.wrapFunction = helpers.getMember("wrap");
+                this.batchFunction = helpers.getMember("batch");
+                this.docValuesClass = helpers.getMember("DocValues");
+                this.paramsClass = helpers.getMember("Params");
+                this.freezeFunction = helpers.getMember("freeze");
+                this.packFunction = helpers.getMember("pack");
+                // Everything defined from now on is removed again by reset()
+                helpers.getMember("snapshot").execute();
+            } catch (RuntimeException e) {
+                context.close(true);
+                throw e;
+            }
+        }
+
+        public Context context() {
+            return context;
+        }
+
+        /**
+         * Returns the script wrapped into a Python function taking {@code params}, {@code doc},
+         * {@code ctx} and {@code _score} as positional arguments and returning the value of the
+         * last expression. The function is defined once per context and script.
+         *
+         * @param script the script to get the function of
+         * @return the function, or null if the script cannot be wrapped and has to be evaluated
+         */
+        public Value scriptFunction(CompiledPythonScript script) {
+            Value function = scriptFunctions.get(script.name());
+            if (function == null) {
+                function = wrapFunction.execute(script.code(), script.name());
+                scriptFunctions.put(script.name(), function);
+            }
+            if (function.isNull()) {
+                evaluatedAsIs = true;
+                return null;
+            }
+            markRun(function);
+            return function;
+        }
+
+        private void markRun(Value function) {
+            for (Value run : runFunctions) {
+                if (run == function) {
+                    return;
+                }
+            }
+            runFunctions.add(function);
+        }
+
+        /**
+         * Returns a Python function that runs a batch script on a {@link DocValueColumns} block
+         * and returns one score per document. The script is compiled and run once per context, in
+         * its own globals, and its batch function is then called for every block.
+         *
+         * @param script the script to get the function of
+         * @param functionName name of the module level function the script defines
+         * @return the function, taking the columns and the script parameters
+         */
+        public Value batchFunction(CompiledPythonScript script, String functionName) {
+            String key = script.name() + "#" + functionName;
+            Value function = scriptFunctions.get(key);
+            if (function == null) {
+                function = batchFunction.execute(script.code(), script.name(), functionName);
+                scriptFunctions.put(key, function);
+            }
+            markRun(function);
+            return function;
+        }
+
+        /**
+         * Wraps a doc values buffer into a Python object that reads the values of the current
+         * document from the buffer, see {@code DocValues} in bootstrap.py.
+         */
+        public Value docValues(NumericDocValuesBuffer buffer) {
+            return docValuesClass.newInstance(buffer);
+        }
+
+        /**
+         * Converts script parameters into read-only Python values: maps into dicts and lists into
+         * lists, recursively.
+         */
+        public Value freezeParams(Map<String, ?> params) {
+            return freezeFunction.execute(toPython(params));
+        }
+
+        /**
+         * Creates the {@code params} variable of a leaf script from frozen parameters. Keys that
+         * are not frozen are looked up in the parameters of the leaf script.
+         *
+         * @param leafParams the parameters of the leaf script, a Java map or a proxy of one
+         */
+        public Value leafParams(Value frozen, Object leafParams) {
+            return paramsClass.newInstance(frozen, leafParams);
+        }
+
+        /**
+         * Packs a Python sequence of numbers into an {@code array('d')} or {@code array('q')},
+         * whose storage the host copies in one go, see {@code pack} in bootstrap.py.
+         *
+         * @return the array, or null if the values are not all floats or all ints
+         */
+        public Value packNumbers(Value values) {
+            Value packed = packFunction.execute(values);
+            return packed.isNull() ? null : packed;
+        }
+
+        private Value toPython(Object value) {
+            if (value instanceof Map<?, ?> map) {
+                Value dict = context.eval(PYTHON_DICT);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    dict.putHashEntry(entry.getKey(), toPython(entry.getValue()));
+                }
+                return dict;
+            }
+            if (value instanceof List<?> list) {
+                Value pythonList = context.eval(PYTHON_LIST);
+                for (Object item : list) {
+                    pythonList.invokeMember("append", toPython(item));
+                }
+                return pythonList;
+            }
+            return context.asValue(value);
+        }
+
+        /**
+         * Marks the start of an execution that the watchdog cancels if it is still running after
+         * the given timeout.
+         *
+         * @param timeout maximum duration of the execution
+         */
+        public void startExecution(TimeValue timeout) {
+            deadlineNanos = System.nanoTime() + timeout.nanos();
+            state.compareAndSet(IDLE, RUNNING);
+        }
+
+        /**
+         * Marks the end of an execution started with {@link #startExecution(TimeValue)}.
+         *
+         * @return false if the watchdog cancelled the execution because it timed out
+         */
+        public boolean finishExecution() {
+            return state.compareAndSet(RUNNING, IDLE) || state.get() == IDLE;
+        }
+
+        /** Whether the watchdog cancelled an execution of this context. */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private boolean isOverdue(long now) {
+            return state.get() == RUNNING && now - deadlineNanos > 0;
+        }
+
+        private boolean cancel() {
+            // Losing the race against finishExecution() means the execution completed in time
+            if (state.compareAndSet(RUNNING, CANCELLED)) {
+                close();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean tryReclaimFromLease(long now, long minIdleNanos) {
+            Object token = leaseToken.get();
+            return token != null
+                    && now - leaseIdleSinceNanos >= minIdleNanos
+                    && leaseToken.compareAndSet(token, null);
+        }
+
+        /**
+         * Restores the globals of {@code __main__}, the builtins, the imported modules and their
+         * attributes to the state recorded right after the context was created. This drops the
+         * bindings put for the last execution as well as anything the script defined, including
+         * the globals of the script functions and attributes set on modules. Only the modules the
+         * scripts that ran could have touched are checked, unless a script was evaluated as is.
+         *
+         * @return false if the context could not be restored and must not be reused
+         */
+        boolean reset() {
+            try {
+                Object[] arguments = new Object[runFunctions.size() + 1];
+                arguments[0] = evaluatedAsIs;
+                for (int i = 0; i < runFunctions.size(); i++) {
+                    arguments[i + 1] = runFunctions.get(i);
+                }
+                runFunctions.clear();
+                evaluatedAsIs = false;
+                if (restoreFunction.execute(arguments).asBoolean()) {
+                    return true;
+                }
+                logger.debug("Python context holds state that cannot be restored, discarding it");
+                return false;
+            } catch (Exception e) {
+                logger.debug("Failed to reset Python context, discarding it", e);
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                // Cancels a script that is still running, e.g. after a timeout
+                context.close(true);
+            } catch (Exception e) {
+                logger.warn("Failed to close Python context", e);
+            }
+        }
+    }
+
+    /**
+     * Pins a context to one script instance, typically the leaf script of a segment, so that
+     * every document of the segment runs on the same warmed context. A leaf script has no way to
+     * tell when it is done, so a context that the lease stopped using is returned to the pool by
+     * the watchdog after a short idle period, or taken over right away when the pool runs out of
+     * contexts. The lease transparently borrows a new context on its next use in that case.
+     *
+     * <p>Documents of the same script instance share the context without a reset in between.
+     * Variables assigned by a wrapped script are local to each call, so only state the script
+     * explicitly makes global is visible to the next document.
+     *
+     * <p>A lease must not be used by several threads concurrently.
+     */
+    public static final class ContextLease {
+        private final PythonContextPool pool;
+        private PooledContext pooled = null;
+        private Object token = null;
+
+        private ContextLease(PythonContextPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Returns the context pinned to this lease, borrowing one if the lease has none.
+         *
+         * @param timeout how long to wait for a context to become available
+         * @return a context that is exclusively owned by the caller until {@link #release}
+         */
+        public PooledContext acquire(TimeValue timeout) {
+            if (pooled != null && pooled.leaseToken.compareAndSet(token, null)) {
+                return pooled;
+            }
+            pooled = null;
+            PooledContext borrowedContext = pool.borrow(timeout);
+            pooled = borrowedContext;
+            token = new Object();
+            return borrowedContext;
+        }
+
+        /**
+         * Keeps the context pinned to the lease until its next use.
+         *
+         * @param reusable false if the context must be released to the pool right away, which
+         *     closes it
+         */
+        public void release(boolean reusable) {
+            PooledContext current = pooled;
+            if (reusable && !current.isCancelled()) {
+                current.leaseIdleSinceNanos = System.nanoTime();
+                current.leaseToken.set(token);
+            } else {
+                pooled = null;
+                token = null;
+                pool.release(current, reusable);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.LeafReaderContext;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyHashMap;
+import org.graalvm.polyglot.proxy.ProxyIterator;
+import org.opensearch.index.fielddata.IndexFieldData;
+import org.opensearch.index.fielddata.ScriptDocValues;
+import org.opensearch.index.mapper.MappedFieldType;
+import org.opensearch.python.PythonContextPool.PooledContext;
+import org.opensearch.search.lookup.SearchLookup;
+
+/**
+ * The {@code doc} variable of leaf scripts. Numeric fields are returned as Python objects backed
+ * by a {@link NumericDocValuesBuffer}, all other fields as {@link ScriptDocValues}.
+ *
+ * <p>The fields a script reads with a string literal are known when it is compiled, see {@link
+ * CompiledPythonScript#docFields()}. Their field data is resolved when the map is created, once
+ * per segment, and their values are read on demand without going through the generic doc lookup.
+ * Other fields are resolved on first access, or read from the generic doc lookup if they have no
+ * field data.
+ *
+ * <p>The Python objects belong to the context of the current execution, so the map has to be
+ * bound to the context with {@link #bind} before every execution. Instances belong to a single
+ * leaf script and are not thread safe.
+ */
+public final class PythonDocMap implements ProxyHashMap {
+    private final Map<String, ScriptDocValues<?>> doc;
+    private final SearchLookup lookup;
+    private final LeafReaderContext leaf;
+    private final Map<String, ResolvedField> fields = new HashMap<>();
+    // Python wrappers of the buffers, created in the bound context
+    private final Map<String, Value> columns = new HashMap<>();
+    private PooledContext pooled = null;
+    private int docId = -1;
+
+    /**
+     * @param doc the generic doc lookup of the leaf script, positioned on the same document
+     * @param plannedFields the fields to resolve right away
+     */
+    public PythonDocMap(
+            Map<String, ScriptDocValues<?>> doc,
+            SearchLookup lookup,
+            LeafReaderContext leaf,
+            Set<String> plannedFields) {
+        this.doc = doc;
+        this.lookup = lookup;
+        this.leaf = leaf;
+        for (String field : plannedFields) {
+            fields.put(field, resolve(field));
+        }
+    }
+
+    public void setDocument(int docId) {
+        this.docId = docId;
+    }
+
+    /** Binds the map to the context the next execution runs on. */
+    void bind(PooledContext pooled) {
+        if (this.pooled != pooled) {
+            columns.clear();
+            this.pooled = pooled;
+        }
+    }
+
+    /**
+     * The buffer backing the values of a field, which the caller positions on documents itself.
+     *
+     * @return the buffer, or null if the values of the field are not read into a buffer
+     */
+    public NumericDocValuesBuffer numericValues(String field) {
+        return fields.computeIfAbsent(field, this::resolve).buffer;
+    }
+
+    @Override
+    public long getHashSize() {
+        return doc.size();
+    }
+
+    @Override
+    public boolean hasHashEntry(Value key) {
+        return key.isString() && doc.containsKey(key.asString());
+    }
+
+    @Override
+    public Object getHashValue(Value key) {
+        String field = key.asString();
+        ResolvedField resolved = fields.computeIfAbsent(field, this::resolve);
+        if (resolved.buffer == null || pooled == null) {
+            return resolved.scriptValues(field);
+        }
+        resolved.buffer.setDocument(docId);
+        Value column = columns.get(field);
+        if (column == null) {
+            column = pooled.docValues(resolved.buffer);
+            columns.put(field, column);
+        }
+        return column;
+    }
+
+    @Override
+    public void putHashEntry(Value key, Value value) {
+        throw new UnsupportedOperationException("doc is read-only");
+    }
+
+    @Override
+    public Object getHashEntriesIterator() {
+        return ProxyIterator.from(
+                doc.entrySet().stream()
+                        .map(entry -> ProxyArray.fromArray(entry.getKey(), entry.getValue()))
+                        .iterator());
+    }
+
+    private ResolvedField resolve(String field) {
+        MappedFieldType fieldType = lookup.fieldType(field);
+        if (fieldType == null) {
+            // The generic doc lookup reports the missing field when it is accessed
+            return new ResolvedField(null);
+        }
+        IndexFieldData<?> fieldData;
+        try {
+            fieldData = lookup.getForField(fieldType);
+        } catch (IllegalArgumentException e) {
+            // The field has no field data, e.g. doc values are disabled
+            return new ResolvedField(null);
+        }
+        ScriptDocValues<?> scriptValues = fieldData.load(leaf).getScriptValues();
+        ResolvedField resolved = new ResolvedField(scriptValues);
+        resolved.buffer =
+                NumericDocValuesBuffer.create(fieldData, leaf, () -> resolved.scriptValues(field));
+        return resolved;
+    }
+
+    /** How the values of a field are read, resolved once per segment. */
+    private final class ResolvedField {
+        // Null if the values are read from the generic doc lookup
+        private final ScriptDocValues<?> scriptValues;
+        // Null if the field is not backed by a buffer
+        private NumericDocValuesBuffer buffer = null;
+        private int scriptValuesDoc = -1;
+
+        ResolvedField(ScriptDocValues<?> scriptValues) {
+            this.scriptValues = scriptValues;
+        }
+
+        ScriptDocValues<?> scriptValues(String field) {
+            if (scriptValues == null) {
+                return doc.get(field);
+            }
+            if (scriptValuesDoc != docId) {
+                try {
+                    scriptValues.setNextDocId(docId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                scriptValuesDoc = docId;
+            }
+            return scriptValues;
+        }
+    }
+}
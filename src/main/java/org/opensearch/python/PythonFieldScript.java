@@ -9,57 +9,110 @@ import java.io.IOException;
 import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.opensearch.python.PythonContextPool.ContextLease;
 import org.opensearch.script.FieldScript;
 import org.opensearch.search.lookup.SearchLookup;
-import org.opensearch.threadpool.ThreadPool;
 
 public class PythonFieldScript {
     private static final Logger logger = LogManager.getLogger();
 
-    public static FieldScriptFactory newFieldScriptFactory(String code, ThreadPool threadPool) {
-        return new FieldScriptFactory(code, threadPool);
+    public static FieldScriptFactory newFieldScriptFactory(
+            CompiledPythonScript script, PythonRuntime runtime) {
+        return new FieldScriptFactory(script, runtime);
     }
 
     public static class FieldScriptFactory implements FieldScript.Factory {
-        private final String code;
-        private final ThreadPool threadPool;
+        private final CompiledPythonScript script;
+        private final PythonRuntime runtime;
 
-        FieldScriptFactory(String code, ThreadPool threadPool) {
-            this.code = code;
-            this.threadPool = threadPool;
+        FieldScriptFactory(CompiledPythonScript script, PythonRuntime runtime) {
+            this.script = script;
+            this.runtime = runtime;
         }
 
         @Override
         public boolean isResultDeterministic() {
-            return true;
+            return script.analysis().deterministic();
         }
 
         @Override
         public FieldScript.LeafFactory newFactory(Map<String, Object> params, SearchLookup lookup) {
-            return new FieldScriptLeafFactory(code, params, lookup, threadPool);
+            return new FieldScriptLeafFactory(
+                    script,
+                    params,
+                    new PythonParams(params),
+                    FieldResultCache.scriptKey(script, params),
+                    lookup,
+                    runtime);
         }
     }
 
     private record FieldScriptLeafFactory(
-            String code, Map<String, Object> params, SearchLookup lookup, ThreadPool threadPool)
+            CompiledPythonScript script,
+            Map<String, Object> params,
+            PythonParams pythonParams,
+            FieldResultCache.ScriptKey cacheKey,
+            SearchLookup lookup,
+            PythonRuntime runtime)
             implements FieldScript.LeafFactory {
 
         @Override
         public FieldScript newInstance(LeafReaderContext ctx) throws IOException {
+            // All documents of the segment run on the same context
+            final ContextLease lease = ExecutionUtils.leaseContext(runtime, script);
+            // Results of deterministic scripts are cached per segment when the cache is enabled
+            final IndexReader.CacheKey segment =
+                    script.analysis().deterministic() ? runtime.fieldCache().segment(ctx) : null;
             return new FieldScript(params, lookup, ctx) {
+                private final PythonDocMap doc =
+                        new PythonDocMap(getDoc(), lookup, ctx, script.analysis().docFields());
+                @SuppressWarnings("unchecked")
+                private final LazySource source =
+                        new LazySource(
+                                ctx,
+                                script.analysis().sourceKeys(),
+                                () -> (Map<String, Object>) getParams().get("_source"));
+                private final PythonParams.Leaf leafParams =
+                        pythonParams.forLeaf(getParams(), source);
+                private int docId;
+
+                @Override
+                public void setDocument(int docid) {
+                    super.setDocument(docid);
+                    docId = docid;
+                    doc.setDocument(docid);
+                    source.setDocument(docid);
+                }
+
                 @Override
                 public Object execute() {
                     logger.debug(
-                            "Executing python field script code: {}\nParams: {}", code, params);
-                    return executePython(threadPool, code, getParams(), getDoc());
+                            "Executing python field script code: {}\nParams: {}",
+                            script.code(),
+                            params);
+                    if (segment != null) {
+                        return runtime.fieldCache()
+                                .getOrCompute(cacheKey, segment, docId, this::run);
+                    }
+                    return run();
+                }
+
+                private Object run() {
+                    return executePython(runtime, lease, script, leafParams, doc);
                 }
             };
         }
 
         private static Object executePython(
-                ThreadPool threadPool, String code, Map<String, ?> params, Map<String, ?> doc) {
-            Object result = ExecutionUtils.executePython(threadPool, code, params, doc, null, null);
+                PythonRuntime runtime,
+                ContextLease lease,
+                CompiledPythonScript script,
+                Object params,
+                Object doc) {
+            Object result =
+                    ExecutionUtils.executePython(runtime, lease, script, params, doc, null, null);
             if (result == null) {
                 logger.debug("Did not get any result from Python field script execution");
                 return null;
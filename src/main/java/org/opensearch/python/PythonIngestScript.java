@@ -8,17 +8,17 @@ package org.opensearch.python;
 import java.util.Map;
 import org.opensearch.script.IngestScript;
 import org.opensearch.script.ScriptFactory;
-import org.opensearch.threadpool.ThreadPool;
 
 /**
  * Executes Python scripts within ingest pipeline processors to transform documents during ingestion.
  */
 public class PythonIngestScript {
-    public static IngestScriptFactory newIngestScriptFactory(String code, ThreadPool threadPool) {
-        return new IngestScriptFactory(code, threadPool);
+    public static IngestScriptFactory newIngestScriptFactory(
+            CompiledPythonScript script, PythonRuntime runtime) {
+        return new IngestScriptFactory(script, runtime);
     }
 
-    public record IngestScriptFactory(String code, ThreadPool threadPool)
+    public record IngestScriptFactory(CompiledPythonScript script, PythonRuntime runtime)
             implements IngestScript.Factory, ScriptFactory {
 
         @Override
@@ -26,22 +26,22 @@ public class PythonIngestScript {
             return new IngestScript(params) {
                 @Override
                 public void execute(Map<String, Object> ctx) {
-                    executePython(threadPool, code, getParams(), ctx);
+                    executePython(runtime, script, getParams(), ctx);
                 }
             };
         }
 
         @Override
         public boolean isResultDeterministic() {
-            return true;
+            return script.analysis().deterministic();
         }
 
         private static void executePython(
-                ThreadPool threadPool,
-                String code,
+                PythonRuntime runtime,
+                CompiledPythonScript script,
                 Map<String, ?> params,
                 Map<String, Object> ctx) {
-            ExecutionUtils.executePython(threadPool, code, params, null, ctx, null);
+            ExecutionUtils.executePython(runtime, script, params, null, ctx, null);
         }
     }
 }
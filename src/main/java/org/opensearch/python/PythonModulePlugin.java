@@ -5,6 +5,7 @@
 
 package org.opensearch.python;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -19,9 +20,11 @@ import org.opensearch.cluster.service.ClusterService;
 import org.opensearch.common.SetOnce;
 import org.opensearch.common.settings.ClusterSettings;
 import org.opensearch.common.settings.IndexScopedSettings;
+import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 import org.opensearch.common.settings.SettingsFilter;
 import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
 import org.opensearch.core.action.ActionResponse;
 import org.opensearch.core.common.io.stream.NamedWriteableRegistry;
 import org.opensearch.core.xcontent.NamedXContentRegistry;
@@ -31,12 +34,16 @@ import org.opensearch.plugins.ActionPlugin;
 import org.opensearch.plugins.Plugin;
 import org.opensearch.plugins.ScriptPlugin;
 import org.opensearch.python.action.PythonExecuteAction;
+import org.opensearch.python.action.PythonStatsAction;
+import org.opensearch.python.antlr.DfaCache;
 import org.opensearch.repositories.RepositoriesService;
 import org.opensearch.rest.RestController;
 import org.opensearch.rest.RestHandler;
 import org.opensearch.script.ScriptContext;
 import org.opensearch.script.ScriptEngine;
 import org.opensearch.script.ScriptService;
+import org.opensearch.threadpool.ExecutorBuilder;
+import org.opensearch.threadpool.FixedExecutorBuilder;
 import org.opensearch.threadpool.ThreadPool;
 import org.opensearch.transport.client.Client;
 import org.opensearch.watcher.ResourceWatcherService;
@@ -56,7 +63,13 @@ import org.opensearch.watcher.ResourceWatcherService;
 public class PythonModulePlugin extends Plugin implements ScriptPlugin, ActionPlugin {
     private static final Logger logger = LogManager.getLogger();
     private static final int WARMUP_DELAY_SECONDS = 5;
+    /** Thread pool that Python executions are handed off to in the thread_pool execution mode. */
+    public static final String PYTHON_THREAD_POOL_NAME = "python";
+    private static final int PYTHON_THREAD_POOL_QUEUE_SIZE = 1000;
     private final SetOnce<PythonScriptEngine> pythonScriptEngine = new SetOnce<>();
+    private final SetOnce<PythonContextPool> contextPool = new SetOnce<>();
+    private final SetOnce<FieldResultCache> fieldCache = new SetOnce<>();
+    private volatile boolean engineAcquired = false;
 
     public PythonModulePlugin() {}
 
@@ -79,13 +92,56 @@ public class PythonModulePlugin extends Plugin implements ScriptPlugin, ActionPl
             NamedWriteableRegistry namedWriteableRegistry,
             IndexNameExpressionResolver indexNameExpressionResolver,
             Supplier<RepositoriesService> repositoriesServiceSupplier) {
+        DfaCache.setMaxStates(
+                ScriptAnalysis.DFA_CACHE_MAX_STATES_SETTING.get(environment.settings()));
+        // Build the parser's DFA caches in the background, so that the first scripts compiled
+        // after the node started are parsed as fast as later ones
+        threadPool
+                .generic()
+                .execute(
+                        () -> {
+                            try {
+                                long startTime = System.currentTimeMillis();
+                                ScriptAnalysis.warmUp();
+                                long duration = System.currentTimeMillis() - startTime;
+                                logger.debug(
+                                        "Python parser warmed up in {}ms, its DFA cache holds [{}]"
+                                                + " states",
+                                        duration,
+                                        DfaCache.size());
+                            } catch (Exception e) {
+                                logger.warn("Python parser warmup failed", e);
+                            }
+                        });
+
+        // All Python contexts of this node attach to one shared engine
+        ExecutionUtils.acquireEngine();
+        engineAcquired = true;
+        contextPool.set(
+                new PythonContextPool(
+                        environment.settings(), threadPool, ExecutionUtils::createContext));
+        fieldCache.set(new FieldResultCache(environment.settings()));
+        PythonRuntime runtime =
+                new PythonRuntime(
+                        threadPool,
+                        contextPool.get(),
+                        ExecutionUtils.EXECUTION_MODE_SETTING.get(environment.settings()),
+                        fieldCache.get(),
+                        PythonContextPool.BORROW_TIMEOUT_SETTING.get(environment.settings()));
+
         // Asynchronously warm up Python engine to reduce cold start latency
         threadPool.schedule(
                 () -> {
                     try {
                         logger.info("Starting Python engine warmup...");
                         long startTime = System.currentTimeMillis();
-                        ExecutionUtils.executePython(threadPool, "1+1", null, null, null, null);
+                        ExecutionUtils.executePython(
+                                runtime,
+                                CompiledPythonScript.create(null, "1+1"),
+                                null,
+                                null,
+                                null,
+                                null);
                         long duration = System.currentTimeMillis() - startTime;
                         logger.info("Python engine warmed up successfully in {}ms", duration);
                     } catch (Exception e) {
@@ -96,12 +152,55 @@ public class PythonModulePlugin extends Plugin implements ScriptPlugin, ActionPl
                 ThreadPool.Names.GENERIC);
 
         PythonScriptEngine engine = pythonScriptEngine.get();
-        // Lazily assign its thread pool
-        engine.setThreadPool(threadPool);
+        // Lazily assign the resources shared by script executions
+        engine.setRuntime(runtime);
         // This is to bind python script engine in guice
         return Collections.singletonList(engine);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (contextPool.get() != null) {
+            contextPool.get().close();
+        }
+        if (fieldCache.get() != null) {
+            fieldCache.get().close();
+        }
+        if (engineAcquired) {
+            engineAcquired = false;
+            ExecutionUtils.releaseEngine();
+        }
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        // Sized like the context pool by default, the executions are bound by it anyway. Size and
+        // queue size can be changed with thread_pool.python.size and thread_pool.python.queue_size
+        return List.of(
+                new FixedExecutorBuilder(
+                        settings,
+                        PYTHON_THREAD_POOL_NAME,
+                        OpenSearchExecutors.allocatedProcessors(settings),
+                        PYTHON_THREAD_POOL_QUEUE_SIZE,
+                        "thread_pool." + PYTHON_THREAD_POOL_NAME));
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return List.of(
+                PythonContextPool.POOL_SIZE_SETTING,
+                PythonContextPool.IDLE_TIMEOUT_SETTING,
+                PythonContextPool.MAX_USES_SETTING,
+                PythonContextPool.BORROW_TIMEOUT_SETTING,
+                ExecutionUtils.EXECUTION_MODE_SETTING,
+                FieldResultCache.SIZE_SETTING,
+                ScriptAnalysis.DFA_CACHE_MAX_STATES_SETTING,
+                CompiledScriptCache.SIZE_SETTING,
+                CompiledScriptCache.EXPIRE_SETTING,
+                PythonScriptEngine.COST_THRESHOLD_SETTING,
+                PythonScriptEngine.COST_ACTION_SETTING);
+    }
+
     /**
      * Actions added by this plugin.
      */
@@ -123,6 +222,9 @@ public class PythonModulePlugin extends Plugin implements ScriptPlugin, ActionPl
             SettingsFilter settingsFilter,
             IndexNameExpressionResolver indexNameExpressionResolver,
             Supplier<DiscoveryNodes> nodesInCluster) {
-        return List.of(new PythonExecuteAction.RestAction());
+        return List.of(
+                new PythonExecuteAction.RestAction(),
+                new PythonStatsAction(
+                        fieldCache::get, () -> pythonScriptEngine.get().getCompileCache()));
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyHashMap;
+import org.graalvm.polyglot.proxy.ProxyIterator;
+import org.opensearch.python.PythonContextPool.PooledContext;
+
+/**
+ * The user parameters of a leaf factory, converted into read-only Python dicts once per context
+ * instead of being read from the Java map through host interop by every document. Nested maps and
+ * lists are converted as well.
+ *
+ * <p>The conversions are shared by the leaf scripts of all segments, which may run concurrently.
+ */
+public final class PythonParams {
+    private final Map<String, ?> params;
+    private final Map<PooledContext, Value> converted = new ConcurrentHashMap<>();
+
+    public PythonParams(Map<String, ?> params) {
+        this.params = params;
+    }
+
+    /**
+     * The parameters of a single leaf script.
+     *
+     * @param leafParams the parameters of the leaf script, which supply the entries added per
+     *     document, like {@code _source}
+     */
+    public Leaf forLeaf(Map<String, ?> leafParams) {
+        return new Leaf(leafParams);
+    }
+
+    /**
+     * The parameters of a single leaf script whose {@code _source} entry is read lazily.
+     *
+     * @param leafParams the parameters of the leaf script, which supply the other entries added
+     *     per document
+     * @param source replaces the {@code _source} entry of the leaf parameters
+     */
+    public Leaf forLeaf(Map<String, ?> leafParams, LazySource source) {
+        return new Leaf(new LeafEntries(leafParams, source));
+    }
+
+    /**
+     * The {@code params} variable of a leaf script. It is bound to the context of every execution,
+     * which is the same context for all documents of a segment in the common case.
+     */
+    public final class Leaf {
+        // A Java map, or a proxy like LeafEntries
+        private final Object leafParams;
+        private PooledContext pooled = null;
+        private Value value = null;
+
+        private Leaf(Object leafParams) {
+            this.leafParams = leafParams;
+        }
+
+        Value bind(PooledContext pooled) {
+            if (this.pooled != pooled) {
+                Value frozen = converted.computeIfAbsent(pooled, p -> p.freezeParams(params));
+                value = pooled.leafParams(frozen, leafParams);
+                this.pooled = pooled;
+            }
+            return value;
+        }
+    }
+
+    /** The per-document entries of the leaf parameters, with {@code _source} read lazily. */
+    private record LeafEntries(Map<String, ?> leafParams, LazySource source)
+            implements ProxyHashMap {
+        private static final String SOURCE = "_source";
+
+        @Override
+        public long getHashSize() {
+            return leafParams.size();
+        }
+
+        @Override
+        public boolean hasHashEntry(Value key) {
+            return key.isString() && leafParams.containsKey(key.asString());
+        }
+
+        @Override
+        public Object getHashValue(Value key) {
+            return get(key.asString());
+        }
+
+        @Override
+        public void putHashEntry(Value key, Value value) {
+            throw new UnsupportedOperationException("params are read-only");
+        }
+
+        @Override
+        public Object getHashEntriesIterator() {
+            return ProxyIterator.from(
+                    leafParams.keySet().stream()
+                            .map(name -> ProxyArray.fromArray(name, get(name)))
+                            .iterator());
+        }
+
+        private Object get(String name) {
+            return SOURCE.equals(name) ? source : leafParams.get(name);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.graalvm.polyglot.Value;
+import org.opensearch.python.PythonContextPool.PooledContext;
+
+/**
+ * Converts the values Python scripts return into Java values. The conversions run before the
+ * context the values belong to is reset or handed out again.
+ *
+ * <p>Numbers keep their type: Python ints become {@link Integer}, {@link Long} or {@link
+ * java.math.BigInteger}, floats become {@link Double}. Lists, tuples and sets become {@link List}
+ * and dicts become {@link Map}, recursively. Large sequences of numbers are packed into an array
+ * on the Python side and copied in one go instead of converting every element.
+ */
+final class PythonResults {
+    private static final String MODULE_META_SIMPLE_NAME = "module";
+    private static final String FLOAT_META_SIMPLE_NAME = "float";
+    // Shorter sequences are cheaper to convert element by element than to pack
+    static final int BULK_COPY_THRESHOLD = 32;
+
+    private PythonResults() {}
+
+    /**
+     * Reads the result of a score script. {@code None} scores 0.
+     *
+     * @throws IllegalArgumentException if the result is not a number
+     */
+    static double toScore(Value result) {
+        if (isNone(result)) {
+            return 0;
+        }
+        if (result.isNumber()) {
+            return toDouble(result);
+        }
+        throw new IllegalArgumentException(
+                "Score script must return a number, got: " + result.getMetaObject());
+    }
+
+    /** Reads the result of a template script. {@code None} is returned as null. */
+    static String toText(Value result) {
+        if (isNone(result)) {
+            return null;
+        }
+        return result.isString() ? result.asString() : result.toString();
+    }
+
+    /**
+     * Converts the result of a script into a Java value of the matching type. Values without a
+     * Java counterpart are returned as their string representation.
+     *
+     * @param pooled the context the result belongs to
+     */
+    static Object toJava(PooledContext pooled, Value result) {
+        if (isNone(result)) {
+            return null;
+        }
+        if (result.isBoolean()) {
+            return result.asBoolean();
+        }
+        if (result.isString()) {
+            return result.asString();
+        }
+        if (result.isNumber()) {
+            return toNumber(result);
+        }
+        if (result.isHostObject()) {
+            return copyHostObject(result.asHostObject(), result);
+        }
+        if (result.hasHashEntries()) {
+            return toMap(pooled, result);
+        }
+        if (result.hasArrayElements()) {
+            return toList(pooled, result);
+        }
+        if (result.hasIterator()) {
+            // Sets, generators and other iterables
+            List<Object> list = new ArrayList<>();
+            Value iterator = result.getIterator();
+            while (iterator.hasIteratorNextElement()) {
+                list.add(toJava(pooled, iterator.getIteratorNextElement()));
+            }
+            return list;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Reads a Python sequence of floats, e.g. an {@code array('d')}, into a double array.
+     *
+     * @param pooled the context the result belongs to
+     */
+    static double[] toDoubles(PooledContext pooled, Value result) {
+        Value packed = result.hasBufferElements() ? result : pooled.packNumbers(result);
+        if (packed != null && isDoubleArray(packed)) {
+            return readDoubles(packed);
+        }
+        double[] values = new double[(int) result.getArraySize()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = toDouble(result.getArrayElement(i));
+        }
+        return values;
+    }
+
+    private static boolean isNone(Value result) {
+        if (result == null || result.isNull()) {
+            return true;
+        }
+        // A module object, e.g. the value of a script that only imports modules
+        Value meta = result.getMetaObject();
+        return meta != null && MODULE_META_SIMPLE_NAME.equals(meta.getMetaSimpleName());
+    }
+
+    private static double toDouble(Value number) {
+        if (number.fitsInDouble()) {
+            return number.asDouble();
+        }
+        if (number.fitsInLong()) {
+            // Ints above 2^53 lose precision
+            return number.asLong();
+        }
+        return number.asBigInteger().doubleValue();
+    }
+
+    private static Object toNumber(Value number) {
+        if (isFloat(number)) {
+            // Also integral floats like 2.0 or 1e20, which fit into a long or a BigInteger
+            return toDouble(number);
+        }
+        if (number.fitsInInt()) {
+            return number.asInt();
+        }
+        if (number.fitsInLong()) {
+            return number.asLong();
+        }
+        return number.fitsInBigInteger() ? number.asBigInteger() : toDouble(number);
+    }
+
+    private static boolean isFloat(Value number) {
+        Value meta = number.getMetaObject();
+        // float, but also numpy's float32 and float64
+        return meta != null && meta.getMetaSimpleName().contains(FLOAT_META_SIMPLE_NAME);
+    }
+
+    private static Map<String, Object> toMap(PooledContext pooled, Value dict) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        Value keys = dict.getHashKeysIterator();
+        while (keys.hasIteratorNextElement()) {
+            Value key = keys.getIteratorNextElement();
+            String name = key.isString() ? key.asString() : key.toString();
+            map.put(name, toJava(pooled, dict.getHashValue(key)));
+        }
+        return map;
+    }
+
+    private static List<Object> toList(PooledContext pooled, Value sequence) {
+        long size = sequence.getArraySize();
+        if (size >= BULK_COPY_THRESHOLD || sequence.hasBufferElements()) {
+            Value packed = pooled.packNumbers(sequence);
+            if (packed != null) {
+                return isDoubleArray(packed)
+                        ? boxed(readDoubles(packed))
+                        : boxed(readLongs(packed));
+            }
+        }
+        List<Object> list = new ArrayList<>((int) size);
+        for (long i = 0; i < size; i++) {
+            list.add(toJava(pooled, sequence.getArrayElement(i)));
+        }
+        return list;
+    }
+
+    private static Object copyHostObject(Object hostObject, Value result) {
+        // Host objects may be reused for the next document, e.g. doc values
+        if (hostObject instanceof Map<?, ?> map) {
+            return new LinkedHashMap<>(map);
+        }
+        if (hostObject instanceof Collection<?> collection) {
+            return new ArrayList<>(collection);
+        }
+        return result.toString();
+    }
+
+    private static boolean isDoubleArray(Value packed) {
+        Value typecode = packed.getMember("typecode");
+        return typecode != null && "d".equals(typecode.asString());
+    }
+
+    private static double[] readDoubles(Value packed) {
+        double[] values = new double[(int) (packed.getBufferSize() / Double.BYTES)];
+        readBuffer(packed).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    private static long[] readLongs(Value packed) {
+        long[] values = new long[(int) (packed.getBufferSize() / Long.BYTES)];
+        readBuffer(packed).asLongBuffer().get(values);
+        return values;
+    }
+
+    private static ByteBuffer readBuffer(Value packed) {
+        byte[] bytes = new byte[(int) packed.getBufferSize()];
+        packed.readBuffer(0, bytes, 0, bytes.length);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private static List<Object> boxed(double[] values) {
+        List<Object> list = new ArrayList<>(values.length);
+        for (double value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static List<Object> boxed(long[] values) {
+        List<Object> list = new ArrayList<>(values.length);
+        for (long value : values) {
+            list.add(fitsInInt(value) ? (Object) (int) value : (Object) value);
+        }
+        return list;
+    }
+
+    private static boolean fitsInInt(long value) {
+        return value == (int) value;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.python.ExecutionUtils.ExecutionMode;
+import org.opensearch.threadpool.ThreadPool;
+
+/**
+ * Node level resources shared by all Python script executions.
+ *
+ * @param threadPool the node's thread pool
+ * @param contextPool the pool Python contexts are borrowed from
+ * @param executionMode where scripts are executed
+ * @param fieldCache the cache of field script results
+ * @param borrowTimeout how long inline executions wait for a free context, see {@link
+ *     PythonContextPool#BORROW_TIMEOUT_SETTING}
+ */
+public record PythonRuntime(
+        ThreadPool threadPool,
+        PythonContextPool contextPool,
+        ExecutionMode executionMode,
+        FieldResultCache fieldCache,
+        TimeValue borrowTimeout) {}
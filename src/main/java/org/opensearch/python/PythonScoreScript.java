@@ -6,59 +6,138 @@
 package org.opensearch.python;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.opensearch.python.PythonContextPool.ContextLease;
+import org.opensearch.python.expression.ExpressionEvaluator;
+import org.opensearch.python.expression.NumericExpression;
 import org.opensearch.script.ScoreScript;
+import org.opensearch.search.lookup.LeafSearchLookup;
 import org.opensearch.search.lookup.SearchLookup;
-import org.opensearch.threadpool.ThreadPool;
 
 public class PythonScoreScript {
     private static final Logger logger = LogManager.getLogger();
 
-    public static ScoreScript.Factory newScoreScriptFactory(String code, ThreadPool threadPool) {
+    /**
+     * Scripts defining a module level function with this name are run in batch mode: the
+     * function is called as {@code score_batch(doc, _score, params)} with the doc values of a
+     * block of documents and returns one score per document.
+     */
+    public static final String BATCH_FUNCTION = "score_batch";
+
+    public static ScoreScript.Factory newScoreScriptFactory(
+            CompiledPythonScript script, PythonRuntime runtime) {
+        if (script.analysis().functions().contains(BATCH_FUNCTION)) {
+            String[] fields =
+                    script.analysis().docFields().stream().sorted().toArray(String[]::new);
+            return new ScoreScript.Factory() {
+
+                @Override
+                public boolean isResultDeterministic() {
+                    return script.analysis().deterministic();
+                }
+
+                @Override
+                public ScoreScript.LeafFactory newFactory(
+                        Map<String, Object> params,
+                        SearchLookup lookup,
+                        IndexSearcher indexSearcher) {
+                    return new BatchScoreScriptLeafFactory(
+                            script,
+                            fields,
+                            params,
+                            new PythonParams(params),
+                            lookup,
+                            indexSearcher,
+                            runtime);
+                }
+            };
+        }
+        // Scores are only computed for scripts that read them
+        final boolean needsScore = script.analysis().readsScore();
         return new ScoreScript.Factory() {
 
             @Override
             public boolean isResultDeterministic() {
-                return true;
+                return script.analysis().deterministic();
             }
 
             @Override
             public ScoreScript.LeafFactory newFactory(
                     Map<String, Object> params, SearchLookup lookup, IndexSearcher indexSearcher) {
-                return newScoreScript(code, params, lookup, indexSearcher, threadPool);
+                return newScoreScript(script, needsScore, params, lookup, indexSearcher, runtime);
             }
         };
     }
 
     private static ScoreScript.LeafFactory newScoreScript(
-            String code,
+            CompiledPythonScript script,
+            boolean needsScore,
             Map<String, Object> params,
             SearchLookup lookup,
             IndexSearcher indexSearcher,
-            ThreadPool threadPool) {
-        return new PythonScoreScriptLeafFactory(code, params, lookup, indexSearcher, threadPool);
+            PythonRuntime runtime) {
+        return new PythonScoreScriptLeafFactory(
+                script,
+                needsScore,
+                params,
+                new PythonParams(params),
+                lookup,
+                indexSearcher,
+                runtime);
     }
 
     private record PythonScoreScriptLeafFactory(
-            String code,
+            CompiledPythonScript script,
+            boolean needsScore,
             Map<String, Object> params,
+            PythonParams pythonParams,
             SearchLookup lookup,
             IndexSearcher indexSearcher,
-            ThreadPool threadPool)
+            PythonRuntime runtime)
             implements ScoreScript.LeafFactory {
 
         @Override
         public boolean needs_score() {
-            return true;
+            return needsScore;
         }
 
         @Override
         public ScoreScript newInstance(LeafReaderContext ctx) throws IOException {
+            final NumericExpression expression = script.analysis().numericExpression();
             return new ScoreScript(params, lookup, indexSearcher, ctx) {
+                private final PythonDocMap doc =
+                        new PythonDocMap(getDoc(), lookup, ctx, script.analysis().docFields());
+                @SuppressWarnings("unchecked")
+                private final LazySource source =
+                        new LazySource(
+                                ctx,
+                                script.analysis().sourceKeys(),
+                                () -> (Map<String, Object>) getParams().get("_source"));
+                private final PythonParams.Leaf leafParams =
+                        pythonParams.forLeaf(getParams(), source);
+                // Plain numeric expressions are evaluated in Java where the types allow it
+                private final ExpressionEvaluator evaluator =
+                        expression == null ? null : expression.link(params, doc::numericValues);
+                // All documents of the segment run on the same context. Only bound up front if
+                // Python runs every document.
+                private ContextLease lease =
+                        evaluator == null ? ExecutionUtils.leaseContext(runtime, script) : null;
+                private int docId = -1;
+
+                @Override
+                public void setDocument(int docid) {
+                    super.setDocument(docid);
+                    doc.setDocument(docid);
+                    source.setDocument(docid);
+                    docId = docid;
+                }
+
                 @Override
                 public double execute(ExplanationHolder explanation) {
                     if (explanation != null) {
@@ -66,23 +145,147 @@ public class PythonScoreScript {
                                 "Use user-provided Python expression to calculate the score of the"
                                         + " document");
                     }
-                    return executePython(threadPool, code, getParams(), getDoc(), get_score());
+                    if (evaluator != null) {
+                        try {
+                            return evaluator.evaluate(docId, needsScore ? get_score() : Double.NaN);
+                        } catch (ExpressionEvaluator.FallbackException e) {
+                            // Python raises the error or computes with arbitrary precision
+                        }
+                    }
+                    if (lease == null) {
+                        lease = ExecutionUtils.leaseContext(runtime, script);
+                    }
+                    // Without needs_score there may be no scorer to ask, _score is None then
+                    Double score = needsScore ? get_score() : null;
+                    return ExecutionUtils.executeScore(
+                            runtime, lease, script, leafParams, doc, score);
                 }
             };
         }
+    }
 
-        private static double executePython(
-                ThreadPool threadPool,
-                String code,
-                Map<String, ?> params,
-                Map<String, ?> doc,
-                double score) {
-            Object evaluatedVal =
-                    ExecutionUtils.executePython(threadPool, code, params, doc, null, score);
-            if (evaluatedVal == null) {
-                return 0;
-            }
-            return ((Number) evaluatedVal).doubleValue();
+    /**
+     * Scores the documents of a segment in blocks of consecutive live documents. The first
+     * document of a block that is scored loads the doc values of the whole block and calls the
+     * batch function once; the other documents of the block read their precomputed score.
+     *
+     * <p>Deleted documents are skipped. Matching documents are not known in advance, since a
+     * {@link org.apache.lucene.search.Scorable} does not expose the iterator of its query, so a
+     * block can include live documents that do not match the query and are never scored. The
+     * block size adapts to how many documents of the previous block were actually scored.
+     *
+     * <p>The query scores of the block are passed as an {@code array('d')}. The scorer only knows
+     * the score of the document being scored, so only the first score is set, and only if the
+     * script reads {@code _score}. The scores of the other documents are NaN.
+     */
+    private record BatchScoreScriptLeafFactory(
+            CompiledPythonScript script,
+            String[] fields,
+            Map<String, Object> params,
+            PythonParams pythonParams,
+            SearchLookup lookup,
+            IndexSearcher indexSearcher,
+            PythonRuntime runtime)
+            implements ScoreScript.LeafFactory {
+        private static final int MIN_BLOCK_SIZE = 16;
+        private static final int INITIAL_BLOCK_SIZE = 64;
+        private static final int MAX_BLOCK_SIZE = 1024;
+
+        @Override
+        public boolean needs_score() {
+            return script.analysis().readsScore();
+        }
+
+        @Override
+        public ScoreScript newInstance(LeafReaderContext ctx) throws IOException {
+            final ContextLease lease =
+                    ExecutionUtils.leaseContext(
+                            runtime,
+                            script,
+                            pooled -> pooled.batchFunction(script, BATCH_FUNCTION));
+            final boolean needsScore = needs_score();
+            return new ScoreScript(params, lookup, indexSearcher, ctx) {
+                private final DocValueColumns columns = new DocValueColumns(fields, lookup, ctx);
+                private final PythonParams.Leaf leafParams = pythonParams.forLeaf(params);
+                private final int maxDoc = ctx.reader().maxDoc();
+                // Null if the segment has no deletions
+                private final Bits liveDocs = ctx.reader().getLiveDocs();
+                private LeafSearchLookup blockLookup = null;
+                private int lastLoadedDoc = -1;
+                private double[] scores = null;
+                // The documents of the current block, in increasing order
+                private int[] blockDocs = new int[INITIAL_BLOCK_SIZE];
+                private int blockCount = 0;
+                private int blockStart = 0;
+                private int blockEnd = 0;
+                private int blockSize = INITIAL_BLOCK_SIZE;
+                private int scored = 0;
+                private int docId = -1;
+
+                @Override
+                public void setDocument(int docid) {
+                    super.setDocument(docid);
+                    this.docId = docid;
+                }
+
+                @Override
+                public double execute(ExplanationHolder explanation) {
+                    if (explanation != null) {
+                        explanation.set(
+                                "Use user-provided Python batch function to calculate the score of"
+                                        + " the document");
+                    }
+                    int index =
+                            docId < blockStart || docId >= blockEnd
+                                    ? -1
+                                    : Arrays.binarySearch(blockDocs, 0, blockCount, docId);
+                    if (index < 0) {
+                        scoreBlock();
+                        index = 0;
+                    }
+                    scored++;
+                    return scores[index];
+                }
+
+                private void scoreBlock() {
+                    int length = blockCount;
+                    if (length > 0) {
+                        if (scored * 2 >= length) {
+                            blockSize = Math.min(blockSize * 2, MAX_BLOCK_SIZE);
+                        } else if (scored * 8 < length) {
+                            blockSize = Math.max(blockSize / 2, MIN_BLOCK_SIZE);
+                        }
+                    }
+                    if (blockLookup == null || docId <= lastLoadedDoc) {
+                        // Doc values only iterate forward, going back needs a fresh lookup
+                        blockLookup = lookup.getLeafSearchLookup(ctx);
+                    }
+                    if (blockDocs.length < blockSize) {
+                        blockDocs = new int[blockSize];
+                    }
+                    // The document being scored comes first, whether or not it is live
+                    int count = 0;
+                    blockDocs[count++] = docId;
+                    for (int doc = docId + 1; doc < maxDoc && count < blockSize; doc++) {
+                        if (liveDocs == null || liveDocs.get(doc)) {
+                            blockDocs[count++] = doc;
+                        }
+                    }
+                    columns.load(blockLookup, blockDocs, count);
+                    if (needsScore) {
+                        columns.setScore(0, get_score());
+                    }
+                    lastLoadedDoc = blockDocs[count - 1];
+                    double[] blockScores =
+                            ExecutionUtils.executeBatch(
+                                    runtime, lease, script, BATCH_FUNCTION, columns, leafParams);
+                    scores = blockScores;
+                    blockCount = count;
+                    blockStart = docId;
+                    blockEnd = lastLoadedDoc + 1;
+                    scored = 0;
+                }
+            };
         }
     }
 }
@@ -5,26 +5,60 @@
 
 package org.opensearch.python;
 
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
+import lombok.Getter;
 import lombok.Setter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.python.phase.ScriptCost;
 import org.opensearch.script.*;
-import org.opensearch.threadpool.ThreadPool;
 
 public class PythonScriptEngine implements ScriptEngine {
     public static final String NAME = "python";
     private static final Logger logger = LogManager.getLogger();
+
+    /** What happens to scripts whose estimated {@link ScriptCost} reaches the threshold. */
+    public enum CostAction {
+        /** The script is compiled and a warning is logged. */
+        WARN,
+        /** The script fails to compile. */
+        REJECT
+    }
+
+    // 0 disables the check. A triple-nested loop over doc values with a single statement reaches
+    // the default.
+    public static final Setting<Long> COST_THRESHOLD_SETTING =
+            Setting.longSetting("plugins.python.cost.threshold", 1_000_000, 0, Property.NodeScope);
+    public static final Setting<CostAction> COST_ACTION_SETTING =
+            new Setting<>(
+                    "plugins.python.cost.action",
+                    "warn",
+                    s -> CostAction.valueOf(s.toUpperCase(Locale.ROOT)),
+                    Property.NodeScope);
+
     // Supported contexts (score, field, template, etc.) and their factories
-    private static Map<ScriptContext<?>, BiFunction<String, ThreadPool, ScriptFactory>> contexts;
+    private static Map<
+                    ScriptContext<?>,
+                    BiFunction<CompiledPythonScript, PythonRuntime, ScriptFactory>>
+            contexts;
     private final Settings settings;
-    @Setter private ThreadPool threadPool;
+    private final long costThreshold;
+    private final CostAction costAction;
+    @Getter private final CompiledScriptCache compileCache;
+    @Setter private PythonRuntime runtime;
 
     public PythonScriptEngine(Settings settings) {
         this.settings = settings;
+        this.costThreshold = COST_THRESHOLD_SETTING.get(settings);
+        this.costAction = COST_ACTION_SETTING.get(settings);
+        this.compileCache = new CompiledScriptCache(settings);
     }
 
     static {
@@ -55,10 +89,45 @@ public class PythonScriptEngine implements ScriptEngine {
                             + context.name
                             + "]");
         }
-        ScriptFactory factory = contexts.get(context).apply(code, threadPool);
+        // Check the script and build its polyglot source once, so that compile errors surface
+        // when the script is stored or compiled and executions carry no parsing cost. Identical
+        // scripts share their compiled form. The cost is checked when a script is compiled, so a
+        // costly script is flagged once rather than on every cache hit, while a rejected script
+        // is never cached and fails every compile.
+        CompiledPythonScript script = compileCache.compile(name, code, this::checkCost);
+        ScriptFactory factory = contexts.get(context).apply(script, runtime);
         return context.factoryClazz.cast(factory);
     }
 
+    /**
+     * Rejects or flags a script whose estimated cost reaches {@link #COST_THRESHOLD_SETTING},
+     * before it runs once per document of a large index.
+     */
+    void checkCost(CompiledPythonScript script) {
+        ScriptCost cost = script.analysis().cost();
+        if (costThreshold == 0 || cost.estimate() < costThreshold) {
+            return;
+        }
+        String message =
+                String.format(
+                        Locale.ROOT,
+                        "Script [%s] has an estimated cost of [%d], reaching the threshold [%d] of"
+                                + " [%s]: loop depth [%d], unbounded loops [%d], expensive calls"
+                                + " [%d]",
+                        script.name(),
+                        cost.estimate(),
+                        costThreshold,
+                        COST_THRESHOLD_SETTING.getKey(),
+                        cost.loopDepth(),
+                        cost.unboundedLoops(),
+                        cost.expensiveCalls());
+        if (costAction == CostAction.REJECT) {
+            throw new ScriptException(
+                    message, new IllegalArgumentException(message), List.of(), script.code(), NAME);
+        }
+        logger.warn(message);
+    }
+
     @Override
     public Set<ScriptContext<?>> getSupportedContexts() {
         return contexts.keySet();
@@ -6,6 +6,8 @@
 package org.opensearch.python;
 
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
@@ -16,10 +18,86 @@ import org.apache.logging.log4j.Logger;
 import org.opensearch.python.antlr.Python3Lexer;
 import org.opensearch.python.antlr.Python3Parser;
 import org.opensearch.python.antlr.Python3ParserBaseListener;
+import org.opensearch.python.antlr.TwoStageParsing;
 
 public class PythonScriptUtility {
     private static final Logger logger = LogManager.getLogger();
 
+    // Builtins that can read a variable without naming it in the code
+    private static final Set<String> DYNAMIC_NAME_ACCESS =
+            Set.of("eval", "exec", "globals", "locals", "vars", "compile", "__import__");
+
+    // Modules that are known not to read the clock, the environment, the file system, the
+    // network or a random source. Importing any other module makes a script non-deterministic.
+    // Of numpy, the random submodule is excluded and datetime64('now') reads the clock.
+    private static final Set<String> DETERMINISTIC_MODULES =
+            Set.of(
+                    "array",
+                    "base64",
+                    "binascii",
+                    "bisect",
+                    "cmath",
+                    "collections",
+                    "copy",
+                    "dataclasses",
+                    "datetime",
+                    "decimal",
+                    "enum",
+                    "fractions",
+                    "functools",
+                    "hashlib",
+                    "heapq",
+                    "itertools",
+                    "json",
+                    "math",
+                    "numbers",
+                    "numpy",
+                    "operator",
+                    "re",
+                    "statistics",
+                    "string",
+                    "struct",
+                    "textwrap",
+                    "typing",
+                    "unicodedata");
+
+    // Builtins whose results differ between processes, that run code the analysis cannot see, or
+    // that reach modules and attributes by a computed name, like getattr(np, 'random')
+    private static final Set<String> NONDETERMINISTIC_BUILTINS =
+            Set.of(
+                    "hash",
+                    "id",
+                    "open",
+                    "input",
+                    "eval",
+                    "exec",
+                    "compile",
+                    "__import__",
+                    "getattr",
+                    "vars",
+                    "globals",
+                    "locals",
+                    "breakpoint");
+
+    // Attributes that reach modules, globals or attributes the analysis cannot see
+    private static final Set<String> DYNAMIC_ATTRIBUTES =
+            Set.of(
+                    "__dict__",
+                    "__getattribute__",
+                    "__getattr__",
+                    "__globals__",
+                    "__builtins__",
+                    "__import__",
+                    "__subclasses__",
+                    "__loader__",
+                    "__spec__");
+
+    // Arguments of numpy.datetime64 that read the clock
+    private static final Set<String> DATETIME64_CLOCK_ARGUMENTS = Set.of("now", "today");
+
+    // Functions of the datetime module that read the clock
+    private static final Set<String> DATETIME_CLOCK_FUNCTIONS = Set.of("now", "today", "utcnow");
+
     /**
      * Check whether the passed-in python code is an expression
      * @param code python code
@@ -37,7 +115,7 @@ public class PythonScriptUtility {
 
         try {
             // Parse the input as an expression (expr_stmt is the rule for expressions in Python)
-            ParseTree tree = parser.expr();
+            ParseTree tree = TwoStageParsing.parse(parser, Python3Parser::expr);
 
             return parser.getNumberOfSyntaxErrors() == 0;
         } catch (ParseCancellationException e) {
@@ -66,13 +144,11 @@ public class PythonScriptUtility {
      * @return Set of accessed fields
      */
     public static Set<String> extractAccessedDocFields(String code) {
-        Set<String> accessedDocFields = new HashSet<>();
-
-        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        Python3Parser parser = new Python3Parser(tokens);
+        return extractAccessedDocFields(parse(code));
+    }
 
-        ParseTree tree = parser.file_input();
+    static Set<String> extractAccessedDocFields(ParseTree tree) {
+        Set<String> accessedDocFields = new HashSet<>();
 
         ParseTreeWalker walker = new ParseTreeWalker();
         walker.walk(new PythonDocFieldListener(accessedDocFields), tree);
@@ -80,6 +156,179 @@ public class PythonScriptUtility {
         return accessedDocFields;
     }
 
+    /**
+     * Parse the python code to extract the top-level source keys it reads, like {@code name} in
+     * {@code params['_source']['name']}
+     * @param code python code
+     * @return Set of accessed source keys
+     */
+    public static Set<String> extractAccessedSourceKeys(String code) {
+        return extractAccessedSourceKeys(parse(code));
+    }
+
+    static Set<String> extractAccessedSourceKeys(ParseTree tree) {
+        Set<String> accessedSourceKeys = new HashSet<>();
+
+        ParseTreeWalker walker = new ParseTreeWalker();
+        walker.walk(new PythonSourceKeyListener(accessedSourceKeys), tree);
+
+        return accessedSourceKeys;
+    }
+
+    /**
+     * Check whether the python code may read a variable. The check is conservative: any identifier
+     * with the name counts, e.g. an attribute, and so does any use of a builtin that can access
+     * variables dynamically, like {@code eval} or {@code globals}. An f-string is a single token,
+     * so one with replacement fields may read any variable.
+     * @param code python code
+     * @param name variable name
+     * @return false if the code certainly does not read the variable
+     */
+    public static boolean mayReadName(String code, String name) {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
+        lexer.removeErrorListeners();
+        return mayReadName(lexer.getAllTokens(), name);
+    }
+
+    static boolean mayReadName(List<? extends Token> tokens, String name) {
+        for (Token token : tokens) {
+            if (token.getType() == Python3Lexer.NAME
+                    && (token.getText().equals(name)
+                            || DYNAMIC_NAME_ACCESS.contains(token.getText()))) {
+                return true;
+            }
+            if (token.getType() == Python3Lexer.STRING && isFormattedString(token.getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a string literal is an f-string with replacement fields
+     */
+    private static boolean isFormattedString(String literal) {
+        // The prefix, like f or rb, ends at the opening quote
+        int quote = 0;
+        while (Character.isLetter(literal.charAt(quote))) {
+            quote++;
+        }
+        String prefix = literal.substring(0, quote);
+        return (prefix.indexOf('f') >= 0 || prefix.indexOf('F') >= 0)
+                && literal.indexOf('{', quote) >= 0;
+    }
+
+    /**
+     * Check whether the python code defines a function with the given name at module level
+     * @param code python code
+     * @param name function name
+     * @return true if a top-level function with the name is defined
+     */
+    public static boolean definesFunction(String code, String name) {
+        return definedFunctions(parse(code)).contains(name);
+    }
+
+    /**
+     * @param tree the parse tree of a script
+     * @return the names of the functions the script defines at module level
+     */
+    static Set<String> definedFunctions(Python3Parser.File_inputContext tree) {
+        Set<String> functions = new HashSet<>();
+        for (Python3Parser.StmtContext stmt : tree.stmt()) {
+            Python3Parser.Compound_stmtContext compound = stmt.compound_stmt();
+            if (compound == null) {
+                continue;
+            }
+            Python3Parser.FuncdefContext funcdef = compound.funcdef();
+            if (funcdef == null && compound.decorated() != null) {
+                funcdef = compound.decorated().funcdef();
+            }
+            if (funcdef != null) {
+                functions.add(funcdef.name().getText());
+            }
+        }
+        return functions;
+    }
+
+    /**
+     * @param tree the parse tree of a script
+     * @return true if the script is a single expression, like {@code doc['a'].value * 2}
+     */
+    static boolean isExpression(Python3Parser.File_inputContext tree) {
+        if (tree.stmt().size() != 1 || tree.stmt(0).simple_stmts() == null) {
+            return false;
+        }
+        List<Python3Parser.Simple_stmtContext> statements =
+                tree.stmt(0).simple_stmts().simple_stmt();
+        if (statements.size() != 1 || statements.get(0).expr_stmt() == null) {
+            return false;
+        }
+        Python3Parser.Expr_stmtContext statement = statements.get(0).expr_stmt();
+        return statement.testlist_star_expr().size() == 1
+                && statement.ASSIGN().isEmpty()
+                && statement.annassign() == null
+                && statement.augassign() == null
+                && statement.testlist_star_expr(0).test().size() == 1
+                && statement.testlist_star_expr(0).COMMA().isEmpty();
+    }
+
+    /**
+     * @param tree the parse tree of a script
+     * @return the modules the script imports, e.g. {@code numpy} for {@code from numpy import mean}
+     */
+    static Set<String> importedModules(ParseTree tree) {
+        Set<String> modules = new HashSet<>();
+        new ParseTreeWalker()
+                .walk(
+                        new Python3ParserBaseListener() {
+                            @Override
+                            public void enterImport_name(Python3Parser.Import_nameContext ctx) {
+                                for (Python3Parser.Dotted_as_nameContext name :
+                                        ctx.dotted_as_names().dotted_as_name()) {
+                                    modules.add(name.dotted_name().getText());
+                                }
+                            }
+
+                            @Override
+                            public void enterImport_from(Python3Parser.Import_fromContext ctx) {
+                                if (ctx.dotted_name() != null) {
+                                    modules.add(ctx.dotted_name().getText());
+                                }
+                            }
+                        },
+                        tree);
+        return modules;
+    }
+
+    /**
+     * Check whether the python code always returns the same result for the same document and
+     * parameters. The check is conservative: only modules known to be pure, like {@code math},
+     * {@code json}, {@code re} or {@code numpy} without {@code numpy.random}, may be imported, and
+     * any use of a builtin like {@code hash}, {@code eval} or {@code getattr} or of an attribute
+     * like {@code __dict__} makes the code non-deterministic. Of the datetime module, only {@code
+     * now}, {@code today} and {@code utcnow} read the clock, of numpy {@code datetime64('now')}.
+     * @param code python code
+     * @return false if the code may return different results for the same input
+     */
+    public static boolean isDeterministic(String code) {
+        return isDeterministic(parse(code));
+    }
+
+    static boolean isDeterministic(ParseTree tree) {
+        PythonDeterminismListener listener = new PythonDeterminismListener();
+        new ParseTreeWalker().walk(listener, tree);
+
+        return listener.isDeterministic();
+    }
+
+    private static Python3Parser.File_inputContext parse(String code) {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        Python3Parser parser = new Python3Parser(tokens);
+
+        return TwoStageParsing.parse(parser, Python3Parser::file_input);
+    }
+
     private static class PythonDocFieldListener extends Python3ParserBaseListener {
         private final Set<String> fields;
 
@@ -106,4 +355,149 @@ public class PythonScriptUtility {
             }
         }
     }
+
+    private static class PythonSourceKeyListener extends Python3ParserBaseListener {
+        private final Set<String> keys;
+
+        public PythonSourceKeyListener(Set<String> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public void enterAtom_expr(Python3Parser.Atom_exprContext ctx) {
+            // Checks for params['_source']['key']
+            if (ctx.atom() == null
+                    || !ctx.atom().getText().equals("params")
+                    || ctx.trailer().size() < 2) {
+                return;
+            }
+            String source = stringLiteral(ctx.trailer(0));
+            String key = stringLiteral(ctx.trailer(1));
+            if ("_source".equals(source) && key != null) {
+                keys.add(key);
+            }
+        }
+
+        private static String stringLiteral(Python3Parser.TrailerContext trailerCtx) {
+            if (trailerCtx.subscriptlist() == null) {
+                return null;
+            }
+            String text = trailerCtx.subscriptlist().getText();
+            if (text.length() >= 2
+                    && (text.startsWith("'") && text.endsWith("'")
+                            || text.startsWith("\"") && text.endsWith("\""))) {
+                return text.substring(1, text.length() - 1);
+            }
+            return null;
+        }
+    }
+
+    // The lower case content of a string literal without prefix, e.g. now for 'now' or b"Now"
+    private static String unquote(String literal) {
+        return literal.replaceAll("^[A-Za-z]*['\"]+|['\"]+$", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static class PythonDeterminismListener extends Python3ParserBaseListener {
+        // Names bound to the numpy module, whose random submodule is non-deterministic
+        private final Set<String> numpyAliases = new HashSet<>();
+        private boolean nondeterministic;
+        private boolean importsDatetime;
+        private boolean callsClockFunction;
+
+        boolean isDeterministic() {
+            return !nondeterministic && !(importsDatetime && callsClockFunction);
+        }
+
+        @Override
+        public void enterImport_name(Python3Parser.Import_nameContext ctx) {
+            // Checks for import random, import numpy.random, import numpy as np
+            for (Python3Parser.Dotted_as_nameContext name :
+                    ctx.dotted_as_names().dotted_as_name()) {
+                String module = name.dotted_name().getText();
+                enterModule(module);
+                if (module.equals("numpy")) {
+                    numpyAliases.add(name.name() != null ? name.name().getText() : module);
+                }
+            }
+        }
+
+        @Override
+        public void enterImport_from(Python3Parser.Import_fromContext ctx) {
+            // Checks for from random import random, from numpy import random
+            if (ctx.dotted_name() == null) {
+                // Relative imports load modules of unknown content
+                nondeterministic = true;
+                return;
+            }
+            String module = ctx.dotted_name().getText();
+            enterModule(module);
+            if (module.equals("numpy")) {
+                if (ctx.import_as_names() == null) {
+                    nondeterministic = true;
+                    return;
+                }
+                for (Python3Parser.Import_as_nameContext name :
+                        ctx.import_as_names().import_as_name()) {
+                    if (name.name(0).getText().equals("random")) {
+                        nondeterministic = true;
+                    }
+                }
+            }
+        }
+
+        private void enterModule(String module) {
+            String root = module.split("\\.", 2)[0];
+            if (!DETERMINISTIC_MODULES.contains(root)
+                    || module.equals("numpy.random")
+                    || module.startsWith("numpy.random.")) {
+                nondeterministic = true;
+            } else if (root.equals("datetime")) {
+                importsDatetime = true;
+            }
+        }
+
+        @Override
+        public void enterAtom(Python3Parser.AtomContext ctx) {
+            // Checks for hash(x), id(x), eval(code)
+            if (ctx.name() != null && NONDETERMINISTIC_BUILTINS.contains(ctx.name().getText())) {
+                nondeterministic = true;
+            }
+        }
+
+        @Override
+        public void enterTrailer(Python3Parser.TrailerContext ctx) {
+            // Checks for datetime.now(), date.today()
+            if (ctx.name() != null && DATETIME_CLOCK_FUNCTIONS.contains(ctx.name().getText())) {
+                callsClockFunction = true;
+            }
+            // Checks for doc.__dict__, f.__globals__
+            if (ctx.name() != null && DYNAMIC_ATTRIBUTES.contains(ctx.name().getText())) {
+                nondeterministic = true;
+            }
+        }
+
+        @Override
+        public void enterAtom_expr(Python3Parser.Atom_exprContext ctx) {
+            // Checks for np.datetime64('now'), datetime64('today')
+            String name = ctx.atom().name() != null ? ctx.atom().name().getText() : null;
+            for (Python3Parser.TrailerContext trailer : ctx.trailer()) {
+                if ("datetime64".equals(name)
+                        && trailer.arglist() != null
+                        && DATETIME64_CLOCK_ARGUMENTS.contains(
+                                unquote(trailer.arglist().argument(0).getText()))) {
+                    nondeterministic = true;
+                }
+                name = trailer.name() != null ? trailer.name().getText() : null;
+            }
+            // Checks for np.random.rand()
+            if (ctx.atom() != null
+                    && ctx.atom().name() != null
+                    && numpyAliases.contains(ctx.atom().name().getText())
+                    && !ctx.trailer().isEmpty()
+                    && ctx.trailer(0).name() != null
+                    && ctx.trailer(0).name().getText().equals("random")) {
+                nondeterministic = true;
+            }
+        }
+    }
 }
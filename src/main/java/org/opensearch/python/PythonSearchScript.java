@@ -8,17 +8,17 @@ package org.opensearch.python;
 import java.util.Map;
 import org.opensearch.script.ScriptFactory;
 import org.opensearch.script.SearchScript;
-import org.opensearch.threadpool.ThreadPool;
 
 /**
  * Executes Python scripts within search pipeline request processors to transform search requests.
  */
 public class PythonSearchScript {
-    public static SearchScriptFactory newSearchScriptFactory(String code, ThreadPool threadPool) {
-        return new SearchScriptFactory(code, threadPool);
+    public static SearchScriptFactory newSearchScriptFactory(
+            CompiledPythonScript script, PythonRuntime runtime) {
+        return new SearchScriptFactory(script, runtime);
     }
 
-    public record SearchScriptFactory(String code, ThreadPool threadPool)
+    public record SearchScriptFactory(CompiledPythonScript script, PythonRuntime runtime)
             implements SearchScript.Factory, ScriptFactory {
 
         @Override
@@ -26,22 +26,22 @@ public class PythonSearchScript {
             return new SearchScript(params) {
                 @Override
                 public void execute(Map<String, Object> ctx) {
-                    executePython(threadPool, code, getParams(), ctx);
+                    executePython(runtime, script, getParams(), ctx);
                 }
             };
         }
 
         @Override
         public boolean isResultDeterministic() {
-            return true;
+            return script.analysis().deterministic();
         }
 
         private static void executePython(
-                ThreadPool threadPool,
-                String code,
+                PythonRuntime runtime,
+                CompiledPythonScript script,
                 Map<String, ?> params,
                 Map<String, Object> ctx) {
-            ExecutionUtils.executePython(threadPool, code, params, null, ctx, null);
+            ExecutionUtils.executePython(runtime, script, params, null, ctx, null);
         }
     }
 }
@@ -10,23 +10,22 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.opensearch.script.ScriptFactory;
 import org.opensearch.script.TemplateScript;
-import org.opensearch.threadpool.ThreadPool;
 
 public class PythonTemplateScript {
     private static final Logger logger = LogManager.getLogger();
 
     public static TemplateScriptFactory newTemplateScriptFactory(
-            String code, ThreadPool threadPool) {
-        return new TemplateScriptFactory(code, threadPool);
+            CompiledPythonScript script, PythonRuntime runtime) {
+        return new TemplateScriptFactory(script, runtime);
     }
 
     public static class TemplateScriptFactory implements TemplateScript.Factory, ScriptFactory {
-        private final String code;
-        private final ThreadPool threadPool;
+        private final CompiledPythonScript script;
+        private final PythonRuntime runtime;
 
-        TemplateScriptFactory(String code, ThreadPool threadPool) {
-            this.code = code;
-            this.threadPool = threadPool;
+        TemplateScriptFactory(CompiledPythonScript script, PythonRuntime runtime) {
+            this.script = script;
+            this.runtime = runtime;
         }
 
         @Override
@@ -34,26 +33,25 @@ public class PythonTemplateScript {
             return new TemplateScript(params) {
                 @Override
                 public String execute() {
-                    logger.debug("Executing template script with code: {}", code);
-                    return executePython(threadPool, code, params);
+                    logger.debug("Executing template script with code: {}", script.code());
+                    return executePython(runtime, script, params);
                 }
             };
         }
 
         @Override
         public boolean isResultDeterministic() {
-            return true;
+            return script.analysis().deterministic();
         }
 
         private static String executePython(
-                ThreadPool threadPool, String code, Map<String, ?> params) {
-            Object result =
-                    ExecutionUtils.executePython(threadPool, code, params, null, null, null);
+                PythonRuntime runtime, CompiledPythonScript script, Map<String, ?> params) {
+            String result = ExecutionUtils.executeTemplate(runtime, script, params);
             if (result == null) {
                 logger.warn("Did not get any result from Python execution");
                 return "";
             }
-            return result.toString();
+            return result;
         }
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.util.List;
+import java.util.Set;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.common.settings.Setting.Property;
+import org.opensearch.python.antlr.DfaCache;
+import org.opensearch.python.antlr.Python3Parser;
+import org.opensearch.python.expression.NumericExpression;
+import org.opensearch.python.phase.ScriptCost;
+import org.opensearch.python.phase.SemanticAnalyzer;
+import org.opensearch.script.ScriptException;
+
+/**
+ * What compile-time analysis knows about a script. A script is lexed and parsed once when it is
+ * compiled, all checks run on that single parse tree, and every optimization reads its facts from
+ * here instead of parsing the script again.
+ *
+ * @param expression whether the script is a single expression, like {@code doc['a'].value * 2}
+ * @param docFields the fields the script reads with {@code doc['...']} and a string literal
+ * @param sourceKeys the top-level keys the script reads with {@code params['_source']['...']} and
+ *     a string literal
+ * @param readsScore whether the script may read {@code _score}, see {@link
+ *     PythonScriptUtility#mayReadName}
+ * @param imports the modules the script imports
+ * @param functions the functions the script defines at module level
+ * @param cost the static estimate of the work one execution does, with the nesting of its loops
+ * @param deterministic whether the script returns the same result for the same document and
+ *     parameters, see {@link PythonScriptUtility#isDeterministic}
+ * @param numericExpression the script compiled into an expression Java can evaluate, or null if
+ *     the script is not a plain numeric expression
+ */
+public record ScriptAnalysis(
+        boolean expression,
+        Set<String> docFields,
+        Set<String> sourceKeys,
+        boolean readsScore,
+        Set<String> imports,
+        Set<String> functions,
+        ScriptCost cost,
+        boolean deterministic,
+        NumericExpression numericExpression) {
+
+    /**
+     * The number of states the shared DFA caches of the Python lexer and parser may hold before
+     * they are cleared, see {@link DfaCache}.
+     */
+    public static final Setting<Integer> DFA_CACHE_MAX_STATES_SETTING =
+            Setting.intSetting(
+                    "plugins.python.parser.dfa_cache.max_states",
+                    100_000,
+                    1_000,
+                    Property.NodeScope);
+
+    // Scripts with the constructs Python scripts commonly use, parsed to warm up the DFA caches
+    private static final List<String> WARMUP_SCRIPTS =
+            List.of(
+                    "doc['price'].value * params['factor'] + _score",
+                    "-_score * 3 if doc['a'].size() > 0 and not params['flag'] else 0.0",
+                    "sum(doc['ratings']) / len(doc['ratings'])",
+                    "import math\nmath.log1p(doc['likes'][0]) ** 2 // 3 % 4",
+                    "params['_source']['first'] + ' ' + doc['last.keyword'].getValue()",
+                    "f\"{params['i']} squared is {params['i'] ** 2:>10}\"",
+                    "from datetime import datetime as dt\n"
+                            + "ctx['year'] = dt.fromisoformat(ctx['date']).year",
+                    "import numpy as np\n"
+                            + "def score_batch(doc, _score, params):\n"
+                            + "    values = np.asarray(doc['a'].first(0.0), dtype=float)\n"
+                            + "    return (values * params.get('w', 1)).tolist()\n",
+                    "total = 0\n"
+                            + "for i, (k, v) in enumerate(sorted(params['m'].items())):\n"
+                            + "    if i >= 10:\n"
+                            + "        break\n"
+                            + "    elif v is None or k in ('a', 'b'):\n"
+                            + "        continue\n"
+                            + "    total += v[1:-1][::2][0]\n"
+                            + "total",
+                    "n = 0\nwhile n < 5:\n    n += 1\nn",
+                    "words = {w.lower(): len(w) for w in params['words'] if w}\n"
+                            + "unique = {*words, *[x for x in range(3)]}\n"
+                            + "pairs = [(a, b) for a in range(3) for b in range(a)]\n"
+                            + "any(x > 1 for x in unique) or max(pairs, key=lambda p: p[1])",
+                    "class Box:\n"
+                            + "    def __init__(self, *args, **kwargs):\n"
+                            + "        self.items = [*args]\n"
+                            + "@staticmethod\n"
+                            + "def f(x: int = 1, y=2, *, z=3) -> int:\n"
+                            + "    global g\n"
+                            + "    try:\n"
+                            + "        assert x, 'x'\n"
+                            + "        with open_it() as h, other():\n"
+                            + "            return (yield x)\n"
+                            + "    except (KeyError, ValueError) as e:\n"
+                            + "        raise RuntimeError('failed') from e\n"
+                            + "    finally:\n"
+                            + "        del x\n"
+                            + "if len(params) > 1 and n != 0:\n"
+                            + "    a, *b = [1, 2, 3]\n"
+                            + "match n:\n"
+                            + "    case 1 | 2:\n"
+                            + "        pass\n"
+                            + "    case _:\n"
+                            + "        pass\n");
+
+    /**
+     * Parses and checks a script.
+     *
+     * @param code the script source code
+     * @return the analysis of the script
+     * @throws ScriptException if the script has syntax errors or fails the semantic checks
+     */
+    public static ScriptAnalysis analyze(String code) {
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(code + '\n');
+        Python3Parser.File_inputContext tree = analyzer.checkSemantic();
+        return new ScriptAnalysis(
+                PythonScriptUtility.isExpression(tree),
+                Set.copyOf(PythonScriptUtility.extractAccessedDocFields(tree)),
+                Set.copyOf(PythonScriptUtility.extractAccessedSourceKeys(tree)),
+                PythonScriptUtility.mayReadName(analyzer.tokens(), "_score"),
+                Set.copyOf(PythonScriptUtility.importedModules(tree)),
+                Set.copyOf(PythonScriptUtility.definedFunctions(tree)),
+                ScriptCost.estimate(tree),
+                PythonScriptUtility.isDeterministic(tree),
+                NumericExpression.compile(tree));
+    }
+
+    /**
+     * Parses scripts with common constructs, so that the first scripts compiled after the node
+     * started do not pay for building the DFA caches of the Python lexer and parser.
+     */
+    public static void warmUp() {
+        for (String code : WARMUP_SCRIPTS) {
+            analyze(code);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.action;
+
+import static org.opensearch.rest.RestRequest.Method.GET;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Supplier;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.python.CompiledScriptCache;
+import org.opensearch.python.FieldResultCache;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.transport.client.node.NodeClient;
+
+/** Reports the statistics of the Python caches of the node that receives the request. */
+public class PythonStatsAction extends BaseRestHandler {
+    private final Supplier<FieldResultCache> fieldCache;
+    private final Supplier<CompiledScriptCache> compileCache;
+
+    public PythonStatsAction(
+            Supplier<FieldResultCache> fieldCache, Supplier<CompiledScriptCache> compileCache) {
+        this.fieldCache = fieldCache;
+        this.compileCache = compileCache;
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(GET, "/_plugins/_python/stats"));
+    }
+
+    @Override
+    public String getName() {
+        return "plugins_python_stats";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest restRequest, NodeClient client)
+            throws IOException {
+        return channel -> {
+            XContentBuilder builder = channel.newBuilder();
+            builder.startObject();
+            builder.field("field_cache");
+            fieldCache.get().toXContent(builder);
+            builder.field("compile_cache");
+            compileCache.get().toXContent(builder);
+            builder.endObject();
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+        };
+    }
+}
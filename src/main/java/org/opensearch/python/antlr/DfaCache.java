@@ -0,0 +1,69 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.antlr;
+
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounds the DFA caches that all instances of {@link Python3Lexer} and {@link Python3Parser} share.
+ *
+ * <p>ANTLR caches the outcome of its adaptive prediction in static DFAs that only ever grow. A warm
+ * cache is what makes parsing fast, but scripts with unusual constructs keep adding states, so the
+ * caches are cleared once they hold more states than allowed. They warm up again with the next
+ * parses.
+ */
+public final class DfaCache {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static volatile int maxStates = Integer.MAX_VALUE;
+
+    private DfaCache() {}
+
+    /**
+     * @param maxStates the number of DFA states beyond which the caches are cleared
+     */
+    public static void setMaxStates(int maxStates) {
+        DfaCache.maxStates = maxStates;
+    }
+
+    /**
+     * @return the number of states in the DFA caches of the lexer and the parser
+     */
+    public static int size() {
+        return size(Python3Lexer._decisionToDFA) + size(Python3Parser._decisionToDFA);
+    }
+
+    /** Clears the DFA caches if they grew beyond the limit. */
+    static void trim() {
+        int size = size();
+        if (size > maxStates) {
+            logger.info(
+                    "Clearing the Python parser DFA cache, it holds [{}] states, more than [{}]",
+                    size,
+                    maxStates);
+            clear(Python3Lexer._decisionToDFA, Python3Lexer._ATN);
+            clear(Python3Parser._decisionToDFA, Python3Parser._ATN);
+        }
+    }
+
+    private static int size(DFA[] dfas) {
+        int size = 0;
+        for (DFA dfa : dfas) {
+            size += dfa.states.size();
+        }
+        return size;
+    }
+
+    // Like ATNSimulator#clearDFA, without needing a lexer or parser instance
+    private static void clear(DFA[] dfas, ATN atn) {
+        for (int d = 0; d < dfas.length; d++) {
+            dfas[d] = new DFA(atn.getDecisionState(d), d);
+        }
+    }
+}
@@ -5,15 +5,20 @@
 
 package org.opensearch.python.antlr;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
 import org.antlr.v4.runtime.*;
 
 abstract class Python3LexerBase extends Lexer {
-    // A queue where extra tokens are pushed on (see the NEWLINE lexer rule).
-    private java.util.LinkedList<Token> tokens = new java.util.LinkedList<>();
-    // The stack that keeps track of the indentation level.
-    private Deque<Integer> indents = new ArrayDeque<>();
+    private static final int INITIAL_CAPACITY = 16;
+
+    // A queue where extra tokens are pushed on (see the NEWLINE lexer rule), as a ring buffer of
+    // pendingCount tokens starting at pendingHead.
+    private Token[] pending = new Token[INITIAL_CAPACITY];
+    private int pendingHead = 0;
+    private int pendingCount = 0;
+    // The stack that keeps track of the indentation level, holding indentCount levels.
+    private int[] indents = new int[INITIAL_CAPACITY];
+    private int indentCount = 0;
     // The amount of opened braces, brackets and parenthesis.
     private int opened = 0;
     // The most recently produced token.
@@ -26,31 +31,36 @@ abstract class Python3LexerBase extends Lexer {
     @Override
     public void emit(Token t) {
         super.setToken(t);
-        tokens.offer(t);
+        if (pendingCount == pending.length) {
+            // Unroll the ring buffer into a buffer twice as large
+            Token[] grown = new Token[pending.length * 2];
+            int tail = pending.length - pendingHead;
+            System.arraycopy(pending, pendingHead, grown, 0, tail);
+            System.arraycopy(pending, 0, grown, tail, pendingHead);
+            pending = grown;
+            pendingHead = 0;
+        }
+        pending[(pendingHead + pendingCount++) & (pending.length - 1)] = t;
     }
 
     @Override
     public Token nextToken() {
         // Check if the end-of-file is ahead and there are still some DEDENTS expected.
-        if (_input.LA(1) == EOF && !this.indents.isEmpty()) {
+        if (_input.LA(1) == EOF && indentCount > 0) {
             // Remove any trailing EOF tokens from our buffer.
-            for (int i = tokens.size() - 1; i >= 0; i--) {
-                if (tokens.get(i).getType() == EOF) {
-                    tokens.remove(i);
-                }
-            }
+            removePendingEofs();
 
             // First emit an extra line break that serves as the end of the statement.
-            this.emit(commonToken(Python3Lexer.NEWLINE, "\n"));
+            this.emit(commonToken(Python3Lexer.NEWLINE, 1));
 
             // Now emit as much DEDENT tokens as needed.
-            while (!indents.isEmpty()) {
+            while (indentCount > 0) {
                 this.emit(createDedent());
-                indents.pop();
+                indentCount--;
             }
 
             // Put the EOF back on the token stream.
-            this.emit(commonToken(Python3Lexer.EOF, "<EOF>"));
+            this.emit(commonToken(Python3Lexer.EOF, "<EOF>".length()));
         }
 
         Token next = super.nextToken();
@@ -60,18 +70,42 @@ abstract class Python3LexerBase extends Lexer {
             this.lastToken = next;
         }
 
-        return tokens.isEmpty() ? next : tokens.poll();
+        if (pendingCount == 0) {
+            return next;
+        }
+        Token first = pending[pendingHead];
+        pending[pendingHead] = null;
+        pendingHead = (pendingHead + 1) & (pending.length - 1);
+        pendingCount--;
+        return first;
+    }
+
+    // Compacts the pending tokens in a single pass, keeping their order
+    private void removePendingEofs() {
+        int mask = pending.length - 1;
+        int kept = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            Token token = pending[(pendingHead + i) & mask];
+            if (token.getType() != EOF) {
+                pending[(pendingHead + kept++) & mask] = token;
+            }
+        }
+        for (int i = kept; i < pendingCount; i++) {
+            pending[(pendingHead + i) & mask] = null;
+        }
+        pendingCount = kept;
     }
 
     private Token createDedent() {
-        CommonToken dedent = commonToken(Python3Lexer.DEDENT, "");
+        CommonToken dedent = commonToken(Python3Lexer.DEDENT, 0);
         dedent.setLine(this.lastToken.getLine());
         return dedent;
     }
 
-    private CommonToken commonToken(int type, String text) {
+    // Every token needs its own instance, token streams assign each token its index
+    private CommonToken commonToken(int type, int length) {
         int stop = this.getCharIndex() - 1;
-        int start = text.isEmpty() ? stop : stop - text.length() + 1;
+        int start = length == 0 ? stop : stop - length + 1;
         return new CommonToken(
                 this._tokenFactorySourcePair, type, DEFAULT_TOKEN_CHANNEL, start, stop);
     }
@@ -84,22 +118,27 @@ abstract class Python3LexerBase extends Lexer {
     //  the replacement is a multiple of eight [...]"
     //
     //  -- https://docs.python.org/3.1/reference/lexical_analysis.html#indentation
-    static int getIndentationCount(String spaces) {
+    static int getIndentationCount(CharSequence spaces) {
         int count = 0;
-        for (char ch : spaces.toCharArray()) {
-            switch (ch) {
-                case '\t':
-                    count += 8 - (count % 8);
-                    break;
-                default:
-                    // A normal space char.
-                    count++;
-            }
+        for (int i = 0; i < spaces.length(); i++) {
+            count = indent(count, spaces.charAt(i));
         }
 
         return count;
     }
 
+    private static int indent(int count, char ch) {
+        if (ch == '\t') {
+            return count + 8 - (count % 8);
+        }
+        // A normal space char.
+        return count + 1;
+    }
+
+    private static boolean isLineBreak(char ch) {
+        return ch == '\r' || ch == '\n' || ch == '\f';
+    }
+
     boolean atStartOfInput() {
         return super.getCharPositionInLine() == 0 && super.getLine() == 1;
     }
@@ -113,9 +152,6 @@ abstract class Python3LexerBase extends Lexer {
     }
 
     void onNewLine() {
-        String newLine = getText().replaceAll("[^\r\n\f]+", "");
-        String spaces = getText().replaceAll("[\r\n\f]+", "");
-
         // Strip newlines inside open clauses except if we are near EOF. We keep NEWLINEs near EOF
         // to
         // satisfy the final newline needed by the single_put rule used by the REPL.
@@ -128,20 +164,36 @@ abstract class Python3LexerBase extends Lexer {
             // dedents and line breaks.
             skip();
         } else {
-            emit(commonToken(Python3Lexer.NEWLINE, newLine));
-            int indent = getIndentationCount(spaces);
-            int previous = indents.isEmpty() ? 0 : indents.peek();
+            // The token holds line breaks followed by the spaces that indent the next line
+            String text = getText();
+            int newLines = 0;
+            int spaces = 0;
+            int indent = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                if (isLineBreak(ch)) {
+                    newLines++;
+                } else {
+                    spaces++;
+                    indent = indent(indent, ch);
+                }
+            }
+            emit(commonToken(Python3Lexer.NEWLINE, newLines));
+            int previous = indentCount == 0 ? 0 : indents[indentCount - 1];
             if (indent == previous) {
                 // skip indents of the same size as the present indent-size
                 skip();
             } else if (indent > previous) {
-                indents.push(indent);
+                if (indentCount == indents.length) {
+                    indents = Arrays.copyOf(indents, indents.length * 2);
+                }
+                indents[indentCount++] = indent;
                 emit(commonToken(Python3Lexer.INDENT, spaces));
             } else {
                 // Possibly emit more than 1 DEDENT token.
-                while (!indents.isEmpty() && indents.peek() > indent) {
+                while (indentCount > 0 && indents[indentCount - 1] > indent) {
                     this.emit(createDedent());
-                    indents.pop();
+                    indentCount--;
                 }
             }
         }
@@ -149,8 +201,10 @@ abstract class Python3LexerBase extends Lexer {
 
     @Override
     public void reset() {
-        tokens = new java.util.LinkedList<>();
-        indents = new ArrayDeque<>();
+        Arrays.fill(pending, null);
+        pendingHead = 0;
+        pendingCount = 0;
+        indentCount = 0;
         opened = 0;
         lastToken = null;
         super.reset();
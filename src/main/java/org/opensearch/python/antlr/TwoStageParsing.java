@@ -0,0 +1,54 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.antlr;
+
+import java.util.List;
+import java.util.function.Function;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/**
+ * Parses with the two-stage strategy recommended for large ANTLR grammars: SLL prediction is tried
+ * first, with an error strategy that bails out on the first error. SLL is much faster than full LL
+ * prediction and parses almost all valid input correctly, but it also fails on some valid input.
+ * Only if it fails, the input is parsed again with full LL prediction and the error handling the
+ * parser was configured with, so syntax errors are reported exactly as in a single LL parse.
+ *
+ * <p>The DFA caches the parses add to are bounded by {@link DfaCache}.
+ */
+public final class TwoStageParsing {
+
+    private TwoStageParsing() {}
+
+    /**
+     * @param parser a parser configured with the error strategy and listeners for the LL stage
+     * @param rule invokes the rule to parse, e.g. {@code Python3Parser::file_input}
+     * @return the result of the rule
+     */
+    public static <T> T parse(Python3Parser parser, Function<Python3Parser, T> rule) {
+        ANTLRErrorStrategy errorHandler = parser.getErrorHandler();
+        List<? extends ANTLRErrorListener> errorListeners =
+                List.copyOf(parser.getErrorListeners());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        try {
+            return rule.apply(parser);
+        } catch (ParseCancellationException e) {
+            // Rewinds the token stream, the tokens lexed so far are not lexed again
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(errorHandler);
+            errorListeners.forEach(parser::addErrorListener);
+            return rule.apply(parser);
+        } finally {
+            DfaCache.trim();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.expression;
+
+import java.util.List;
+
+/** The syntax tree of a numeric expression, see {@link ExpressionParser} for what it covers. */
+sealed interface Expr {
+
+    /** An int literal. */
+    record IntLiteral(long value) implements Expr {}
+
+    /** A float literal, or a constant of the math module. */
+    record FloatLiteral(double value) implements Expr {}
+
+    /** {@code _score} */
+    record Score() implements Expr {}
+
+    /** {@code params['name']} */
+    record Param(String name) implements Expr {}
+
+    /**
+     * {@code doc['field'][index]}, or {@code doc['field'].value} and {@code
+     * doc['field'].getValue()} for index 0.
+     */
+    record DocElement(String field, int index) implements Expr {}
+
+    /** {@code len(doc['field'])} or {@code doc['field'].size()} */
+    record DocCount(String field) implements Expr {}
+
+    /** {@code sum(doc['field'])}, {@code min(doc['field'])} or {@code max(doc['field'])} */
+    record DocReduce(String field, Builtin function) implements Expr {}
+
+    /** {@code -operand} */
+    record Negate(Expr operand) implements Expr {}
+
+    record Binary(Operator operator, Expr left, Expr right) implements Expr {}
+
+    /** A call of a builtin or of a function of the math module. */
+    record Call(Builtin function, List<Expr> arguments) implements Expr {}
+
+    /** {@code then if test else otherwise} */
+    record Conditional(Condition test, Expr then, Expr otherwise) implements Expr {}
+
+    enum Operator {
+        ADD,
+        SUBTRACT,
+        MULTIPLY,
+        DIVIDE,
+        FLOOR_DIVIDE,
+        MODULO,
+        POWER
+    }
+
+    /** Builtins and functions of the math module. */
+    enum Builtin {
+        ABS,
+        MIN,
+        MAX,
+        SUM,
+        SQRT,
+        EXP,
+        LOG,
+        LOG10,
+        LOG1P,
+        FLOOR,
+        CEIL,
+        FABS,
+        POW
+    }
+
+    enum Comparison {
+        LESS,
+        LESS_OR_EQUAL,
+        GREATER,
+        GREATER_OR_EQUAL,
+        EQUAL,
+        NOT_EQUAL
+    }
+
+    /** An expression whose truth value is tested, e.g. by a conditional expression. */
+    sealed interface Condition {
+
+        /** {@code operands[0] comparisons[0] operands[1] comparisons[1] ...} */
+        record Compare(List<Expr> operands, List<Comparison> comparisons) implements Condition {}
+
+        record Not(Condition operand) implements Condition {}
+
+        /** {@code operands[0] and operands[1] and ...} */
+        record All(List<Condition> operands) implements Condition {}
+
+        /** {@code operands[0] or operands[1] or ...} */
+        record Any(List<Condition> operands) implements Condition {}
+
+        /** A number used as a condition, true unless it is zero. */
+        record Truthy(Expr operand) implements Condition {}
+    }
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.opensearch.python.NumericDocValuesBuffer;
+import org.opensearch.python.expression.Expr.Builtin;
+import org.opensearch.python.expression.Expr.Comparison;
+import org.opensearch.python.expression.Expr.Condition;
+
+/**
+ * Evaluates a numeric expression for the documents of a segment without going through Python.
+ *
+ * <p>Python semantics are kept: ints and floats are told apart when the evaluator is linked, ints
+ * are computed exactly as longs, floats with the same operations Python uses, e.g. floored {@code
+ * //} and {@code %} and compensated summation of floats in {@code sum}. Wherever Python raises an
+ * error, or an int does not fit into a long, {@link #evaluate} throws {@link FallbackException}
+ * and the document has to be scored by Python instead, which then produces the same result or
+ * error as always.
+ *
+ * <p>Instances belong to a single leaf script and are not thread safe.
+ */
+public final class ExpressionEvaluator {
+    // Ints up to this magnitude convert to floats exactly
+    private static final long MAX_EXACT_INT = 1L << 53;
+
+    private final Node root;
+    private final List<NumericDocValuesBuffer> buffers = new ArrayList<>();
+    private double score = Double.NaN;
+
+    private ExpressionEvaluator(
+            Expr expr, Map<String, ?> params, Function<String, NumericDocValuesBuffer> fields) {
+        this.root = new Linker(params, fields).node(expr);
+    }
+
+    /**
+     * Links an expression to the parameters and doc values of a leaf script.
+     *
+     * @return the evaluator, or null if the parameters or fields the expression reads have types
+     *     the evaluator does not support
+     */
+    static ExpressionEvaluator link(
+            Expr expr,
+            Map<String, ?> params,
+            Function<String, NumericDocValuesBuffer> fields) {
+        try {
+            return new ExpressionEvaluator(expr, params, fields);
+        } catch (Unsupported | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates the expression for a document.
+     *
+     * @param score the value of {@code _score}
+     * @throws FallbackException if the document has to be scored by Python
+     */
+    public double evaluate(int doc, double score) {
+        this.score = score;
+        for (NumericDocValuesBuffer buffer : buffers) {
+            buffer.setDocument(doc);
+        }
+        try {
+            return root.integral() ? root.ints().getAsLong() : root.floats().getAsDouble();
+        } catch (ArithmeticException e) {
+            // An int overflowed, Python would have continued with arbitrary precision
+            throw FallbackException.INSTANCE;
+        }
+    }
+
+    /** Thrown when a document has to be scored by Python. */
+    public static final class FallbackException extends RuntimeException {
+        private static final FallbackException INSTANCE = new FallbackException();
+
+        private FallbackException() {
+            super("the document has to be scored by Python", null, false, false);
+        }
+    }
+
+    /**
+     * A node of the linked expression, either an int or a float.
+     *
+     * @param constant the value of int nodes that do not depend on the document, or null
+     */
+    private record Node(boolean integral, LongSupplier ints, DoubleSupplier floats, Long constant) {
+        static Node ofInt(LongSupplier ints) {
+            return new Node(true, ints, null, null);
+        }
+
+        static Node ofFloat(DoubleSupplier floats) {
+            return new Node(false, null, floats, null);
+        }
+
+        static Node constant(long value) {
+            return new Node(true, () -> value, null, value);
+        }
+
+        double asFloat() {
+            return integral ? ints.getAsLong() : floats.getAsDouble();
+        }
+    }
+
+    private final class Linker {
+        private final Map<String, ?> params;
+        private final Function<String, NumericDocValuesBuffer> fields;
+
+        Linker(Map<String, ?> params, Function<String, NumericDocValuesBuffer> fields) {
+            this.params = params;
+            this.fields = fields;
+        }
+
+        Node node(Expr expr) {
+            return switch (expr) {
+                case Expr.IntLiteral literal -> Node.constant(literal.value());
+                case Expr.FloatLiteral literal -> {
+                    double value = literal.value();
+                    yield Node.ofFloat(() -> value);
+                }
+                case Expr.Score ignored -> Node.ofFloat(() -> score);
+                case Expr.Param param -> param(param.name());
+                case Expr.DocElement element -> docElement(element.field(), element.index());
+                case Expr.DocCount count -> {
+                    NumericDocValuesBuffer buffer = buffer(count.field());
+                    yield Node.ofInt(buffer::count);
+                }
+                case Expr.DocReduce reduce -> docReduce(reduce.field(), reduce.function());
+                case Expr.Negate negate -> negate(node(negate.operand()));
+                case Expr.Binary binary ->
+                        binary(binary.operator(), node(binary.left()), node(binary.right()));
+                case Expr.Call call -> call(call.function(), call.arguments());
+                case Expr.Conditional conditional -> {
+                    BooleanSupplier test = condition(conditional.test());
+                    Node then = node(conditional.then());
+                    Node otherwise = node(conditional.otherwise());
+                    if (then.integral() != otherwise.integral()) {
+                        throw new Unsupported();
+                    }
+                    yield then.integral()
+                            ? Node.ofInt(
+                                    () ->
+                                            test.getAsBoolean()
+                                                    ? then.ints().getAsLong()
+                                                    : otherwise.ints().getAsLong())
+                            : Node.ofFloat(
+                                    () ->
+                                            test.getAsBoolean()
+                                                    ? then.floats().getAsDouble()
+                                                    : otherwise.floats().getAsDouble());
+                }
+            };
+        }
+
+        private Node param(String name) {
+            Object value = params.get(name);
+            if (value instanceof Integer || value instanceof Long) {
+                return Node.constant(((Number) value).longValue());
+            }
+            if (value instanceof Double || value instanceof Float) {
+                double floatValue = ((Number) value).doubleValue();
+                return Node.ofFloat(() -> floatValue);
+            }
+            // Missing parameters, bools, strings and other values are left to Python
+            throw new Unsupported();
+        }
+
+        private NumericDocValuesBuffer buffer(String field) {
+            NumericDocValuesBuffer buffer = fields.apply(field);
+            if (buffer == null
+                    || !(buffer.kind().equals("long") || buffer.kind().equals("double"))) {
+                // Booleans and dates are objects in Python
+                throw new Unsupported();
+            }
+            if (!buffers.contains(buffer)) {
+                buffers.add(buffer);
+            }
+            return buffer;
+        }
+
+        private Node docElement(String field, int index) {
+            NumericDocValuesBuffer buffer = buffer(field);
+            if (buffer.kind().equals("long")) {
+                return Node.ofInt(() -> buffer.buffer().getLong(position(buffer, index)));
+            }
+            return Node.ofFloat(() -> buffer.buffer().getDouble(position(buffer, index)));
+        }
+
+        private Node docReduce(String field, Builtin function) {
+            NumericDocValuesBuffer buffer = buffer(field);
+            boolean max = function == Builtin.MAX;
+            if (buffer.kind().equals("long")) {
+                if (function == Builtin.SUM) {
+                    return Node.ofInt(
+                            () -> {
+                                long sum = 0;
+                                for (int i = 0, count = buffer.count(); i < count; i++) {
+                                    long value = buffer.buffer().getLong(i * Long.BYTES);
+                                    sum = Math.addExact(sum, value);
+                                }
+                                return sum;
+                            });
+                }
+                return Node.ofInt(
+                        () -> {
+                            int count = nonEmptyCount(buffer);
+                            long result = buffer.buffer().getLong(0);
+                            for (int i = 1; i < count; i++) {
+                                long value = buffer.buffer().getLong(i * Long.BYTES);
+                                if (max ? value > result : value < result) {
+                                    result = value;
+                                }
+                            }
+                            return result;
+                        });
+            }
+            if (function == Builtin.SUM) {
+                // sum of no floats is the int 0
+                return Node.ofFloat(() -> sumFloats(buffer, nonEmptyCount(buffer)));
+            }
+            return Node.ofFloat(
+                    () -> {
+                        int count = nonEmptyCount(buffer);
+                        double result = buffer.buffer().getDouble(0);
+                        for (int i = 1; i < count; i++) {
+                            double value = buffer.buffer().getDouble(i * Double.BYTES);
+                            if (max ? value > result : value < result) {
+                                result = value;
+                            }
+                        }
+                        return result;
+                    });
+        }
+
+        private Node negate(Node operand) {
+            if (operand.constant() != null) {
+                return Node.constant(Math.negateExact(operand.constant()));
+            }
+            return operand.integral()
+                    ? Node.ofInt(() -> Math.negateExact(operand.ints().getAsLong()))
+                    : Node.ofFloat(() -> -operand.floats().getAsDouble());
+        }
+
+        private Node binary(Expr.Operator operator, Node left, Node right) {
+            if (left.integral() && right.integral()) {
+                return intBinary(operator, left.ints(), right);
+            }
+            return switch (operator) {
+                case ADD -> Node.ofFloat(() -> left.asFloat() + right.asFloat());
+                case SUBTRACT -> Node.ofFloat(() -> left.asFloat() - right.asFloat());
+                case MULTIPLY -> Node.ofFloat(() -> left.asFloat() * right.asFloat());
+                case DIVIDE -> Node.ofFloat(() -> divide(left.asFloat(), right.asFloat()));
+                case FLOOR_DIVIDE ->
+                        Node.ofFloat(() -> floorDivide(left.asFloat(), right.asFloat()));
+                case MODULO -> Node.ofFloat(() -> modulo(left.asFloat(), right.asFloat()));
+                case POWER -> Node.ofFloat(() -> power(left.asFloat(), right.asFloat()));
+            };
+        }
+
+        private Node intBinary(Expr.Operator operator, LongSupplier left, Node rightNode) {
+            LongSupplier right = rightNode.ints();
+            return switch (operator) {
+                case ADD -> Node.ofInt(() -> Math.addExact(left.getAsLong(), right.getAsLong()));
+                case SUBTRACT ->
+                        Node.ofInt(
+                                () -> Math.subtractExact(left.getAsLong(), right.getAsLong()));
+                case MULTIPLY ->
+                        Node.ofInt(
+                                () -> Math.multiplyExact(left.getAsLong(), right.getAsLong()));
+                case DIVIDE ->
+                        Node.ofFloat(
+                                () -> {
+                                    long dividend = left.getAsLong();
+                                    long divisor = right.getAsLong();
+                                    // Python divides larger ints exactly before rounding
+                                    return divide(exactFloat(dividend), exactFloat(divisor));
+                                });
+                case FLOOR_DIVIDE ->
+                        Node.ofInt(
+                                () -> {
+                                    long dividend = left.getAsLong();
+                                    long divisor = nonZero(right.getAsLong());
+                                    return divisor == -1
+                                            ? Math.negateExact(dividend)
+                                            : Math.floorDiv(dividend, divisor);
+                                });
+                case MODULO ->
+                        Node.ofInt(
+                                () -> Math.floorMod(left.getAsLong(), nonZero(right.getAsLong())));
+                case POWER -> intPower(left, rightNode);
+            };
+        }
+
+        private Node intPower(LongSupplier base, Node exponent) {
+            // The type of int ** int depends on the sign of the exponent
+            if (exponent.constant() == null) {
+                throw new Unsupported();
+            }
+            long constant = exponent.constant();
+            if (constant < 0) {
+                return Node.ofFloat(() -> power(base.getAsLong(), constant));
+            }
+            return Node.ofInt(
+                    () -> {
+                        long result = 1;
+                        long factor = base.getAsLong();
+                        for (long e = constant; e > 0; ) {
+                            if ((e & 1) != 0) {
+                                result = Math.multiplyExact(result, factor);
+                            }
+                            e >>= 1;
+                            if (e > 0) {
+                                factor = Math.multiplyExact(factor, factor);
+                            }
+                        }
+                        return result;
+                    });
+        }
+
+        private Node call(Builtin function, List<Expr> arguments) {
+            List<Node> nodes = new ArrayList<>(arguments.size());
+            for (Expr argument : arguments) {
+                nodes.add(node(argument));
+            }
+            Node x = nodes.get(0);
+            return switch (function) {
+                case ABS ->
+                        x.integral()
+                                ? Node.ofInt(() -> Math.absExact(x.ints().getAsLong()))
+                                : Node.ofFloat(() -> Math.abs(x.floats().getAsDouble()));
+                case MIN, MAX -> minMax(function == Builtin.MAX, nodes);
+                case SQRT ->
+                        Node.ofFloat(
+                                () -> {
+                                    double value = x.asFloat();
+                                    return Math.sqrt(value < 0 ? fallback() : value);
+                                });
+                case EXP ->
+                        Node.ofFloat(
+                                () -> {
+                                    double value = x.asFloat();
+                                    return finite(Math.exp(value), value);
+                                });
+                case LOG -> {
+                    if (nodes.size() == 1) {
+                        yield Node.ofFloat(() -> Math.log(positive(x.asFloat())));
+                    }
+                    Node base = nodes.get(1);
+                    yield Node.ofFloat(
+                            () -> {
+                                double numerator = Math.log(positive(x.asFloat()));
+                                double denominator = Math.log(positive(base.asFloat()));
+                                return divide(numerator, denominator);
+                            });
+                }
+                case LOG10 -> Node.ofFloat(() -> Math.log10(positive(x.asFloat())));
+                case LOG1P ->
+                        Node.ofFloat(
+                                () -> {
+                                    double value = x.asFloat();
+                                    return Math.log1p(value <= -1 ? fallback() : value);
+                                });
+                case FLOOR, CEIL -> {
+                    if (x.integral()) {
+                        yield x;
+                    }
+                    boolean floor = function == Builtin.FLOOR;
+                    yield Node.ofInt(
+                            () -> {
+                                double value = x.floats().getAsDouble();
+                                return toLong(floor ? Math.floor(value) : Math.ceil(value));
+                            });
+                }
+                case FABS -> Node.ofFloat(() -> Math.abs(x.asFloat()));
+                case POW -> {
+                    Node y = nodes.get(1);
+                    yield Node.ofFloat(() -> power(x.asFloat(), y.asFloat()));
+                }
+                case SUM -> throw new Unsupported();
+            };
+        }
+
+        private Node minMax(boolean max, List<Node> nodes) {
+            boolean integral = nodes.get(0).integral();
+            for (Node node : nodes) {
+                if (node.integral() != integral) {
+                    // The type of the result would depend on the values
+                    throw new Unsupported();
+                }
+            }
+            if (integral) {
+                return Node.ofInt(
+                        () -> {
+                            long result = nodes.get(0).ints().getAsLong();
+                            for (int i = 1; i < nodes.size(); i++) {
+                                long value = nodes.get(i).ints().getAsLong();
+                                if (max ? value > result : value < result) {
+                                    result = value;
+                                }
+                            }
+                            return result;
+                        });
+            }
+            return Node.ofFloat(
+                    () -> {
+                        double result = nodes.get(0).floats().getAsDouble();
+                        for (int i = 1; i < nodes.size(); i++) {
+                            double value = nodes.get(i).floats().getAsDouble();
+                            if (max ? value > result : value < result) {
+                                result = value;
+                            }
+                        }
+                        return result;
+                    });
+        }
+
+        private BooleanSupplier condition(Condition condition) {
+            return switch (condition) {
+                case Condition.Compare compare -> compare(compare);
+                case Condition.Not not -> {
+                    BooleanSupplier operand = condition(not.operand());
+                    yield () -> !operand.getAsBoolean();
+                }
+                case Condition.All all -> {
+                    List<BooleanSupplier> operands = conditions(all.operands());
+                    yield () -> {
+                        for (BooleanSupplier operand : operands) {
+                            if (!operand.getAsBoolean()) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    };
+                }
+                case Condition.Any any -> {
+                    List<BooleanSupplier> operands = conditions(any.operands());
+                    yield () -> {
+                        for (BooleanSupplier operand : operands) {
+                            if (operand.getAsBoolean()) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    };
+                }
+                case Condition.Truthy truthy -> {
+                    Node operand = node(truthy.operand());
+                    yield operand.integral()
+                            ? () -> operand.ints().getAsLong() != 0
+                            : () -> operand.floats().getAsDouble() != 0;
+                }
+            };
+        }
+
+        private List<BooleanSupplier> conditions(List<Condition> conditions) {
+            List<BooleanSupplier> suppliers = new ArrayList<>(conditions.size());
+            for (Condition condition : conditions) {
+                suppliers.add(condition(condition));
+            }
+            return suppliers;
+        }
+
+        private BooleanSupplier compare(Condition.Compare compare) {
+            List<Node> operands = new ArrayList<>();
+            for (Expr operand : compare.operands()) {
+                operands.add(node(operand));
+            }
+            List<Comparison> comparisons = compare.comparisons();
+            return () -> {
+                // a < b < c is a < b and b < c
+                for (int i = 0; i < comparisons.size(); i++) {
+                    if (!compare(operands.get(i), comparisons.get(i), operands.get(i + 1))) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+    }
+
+    private static boolean compare(Node left, Comparison comparison, Node right) {
+        int order;
+        if (left.integral() && right.integral()) {
+            order = Long.compare(left.ints().getAsLong(), right.ints().getAsLong());
+        } else {
+            double a = left.integral() ? exactFloat(left.ints().getAsLong()) : left.asFloat();
+            double b = right.integral() ? exactFloat(right.ints().getAsLong()) : right.asFloat();
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                // NaN is neither less than, equal to nor greater than anything
+                return comparison == Comparison.NOT_EQUAL;
+            }
+            order = a < b ? -1 : (a > b ? 1 : 0);
+        }
+        return switch (comparison) {
+            case LESS -> order < 0;
+            case LESS_OR_EQUAL -> order <= 0;
+            case GREATER -> order > 0;
+            case GREATER_OR_EQUAL -> order >= 0;
+            case EQUAL -> order == 0;
+            case NOT_EQUAL -> order != 0;
+        };
+    }
+
+    private static int position(NumericDocValuesBuffer buffer, int index) {
+        int count = buffer.count();
+        int position = index < 0 ? index + count : index;
+        if (position < 0 || position >= count) {
+            // IndexError, or ValueError for doc['field'].value
+            throw FallbackException.INSTANCE;
+        }
+        return position * Long.BYTES;
+    }
+
+    private static int nonEmptyCount(NumericDocValuesBuffer buffer) {
+        int count = buffer.count();
+        if (count == 0) {
+            throw FallbackException.INSTANCE;
+        }
+        return count;
+    }
+
+    /** Sums floats the way Python's {@code sum} does, with Neumaier's compensated summation. */
+    private static double sumFloats(NumericDocValuesBuffer buffer, int count) {
+        // The start value is the int 0, which turns -0.0 into 0.0
+        double sum = 0 + buffer.buffer().getDouble(0);
+        double compensation = 0.0;
+        for (int i = 1; i < count; i++) {
+            double value = buffer.buffer().getDouble(i * Double.BYTES);
+            double total = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - total) + value;
+            } else {
+                compensation += (value - total) + sum;
+            }
+            sum = total;
+        }
+        if (compensation != 0 && Double.isFinite(compensation)) {
+            sum += compensation;
+        }
+        return sum;
+    }
+
+    private static double exactFloat(long value) {
+        if (value > MAX_EXACT_INT || value < -MAX_EXACT_INT) {
+            throw FallbackException.INSTANCE;
+        }
+        return value;
+    }
+
+    private static long nonZero(long divisor) {
+        if (divisor == 0) {
+            // ZeroDivisionError
+            throw FallbackException.INSTANCE;
+        }
+        return divisor;
+    }
+
+    private static double divide(double dividend, double divisor) {
+        if (divisor == 0) {
+            throw FallbackException.INSTANCE;
+        }
+        return dividend / divisor;
+    }
+
+    /** Python's float {@code %}, whose result has the sign of the divisor. */
+    private static double modulo(double dividend, double divisor) {
+        if (divisor == 0) {
+            throw FallbackException.INSTANCE;
+        }
+        double mod = dividend % divisor;
+        if (mod != 0) {
+            if ((divisor < 0) != (mod < 0)) {
+                mod += divisor;
+            }
+        } else {
+            mod = Math.copySign(0.0, divisor);
+        }
+        return mod;
+    }
+
+    /** Python's float {@code //}. */
+    private static double floorDivide(double dividend, double divisor) {
+        if (divisor == 0) {
+            throw FallbackException.INSTANCE;
+        }
+        double mod = dividend % divisor;
+        double div = (dividend - mod) / divisor;
+        if (mod != 0 && (divisor < 0) != (mod < 0)) {
+            div -= 1.0;
+        }
+        if (div == 0) {
+            return Math.copySign(0.0, dividend / divisor);
+        }
+        double floorDiv = Math.floor(div);
+        if (div - floorDiv > 0.5) {
+            floorDiv += 1.0;
+        }
+        return floorDiv;
+    }
+
+    /** Python's float {@code **} and {@code math.pow} for the cases that do not raise. */
+    private static double power(double base, double exponent) {
+        if (!Double.isFinite(base)
+                || !Double.isFinite(exponent)
+                || base == 0 && exponent < 0
+                || base < 0 && exponent != Math.floor(exponent)) {
+            // Special values, ZeroDivisionError, ValueError or a complex result
+            throw FallbackException.INSTANCE;
+        }
+        return finite(Math.pow(base, exponent), base);
+    }
+
+    /** Fails for results that overflowed, for which Python raises an OverflowError. */
+    private static double finite(double result, double argument) {
+        if (Double.isInfinite(result) && Double.isFinite(argument)) {
+            throw FallbackException.INSTANCE;
+        }
+        return result;
+    }
+
+    private static double positive(double value) {
+        // math domain error
+        return value <= 0 ? fallback() : value;
+    }
+
+    private static long toLong(double value) {
+        // NaN and infinity raise, larger ints are left to Python
+        if (!(value >= Long.MIN_VALUE && value < 0x1p63)) {
+            throw FallbackException.INSTANCE;
+        }
+        return (long) value;
+    }
+
+    private static double fallback() {
+        throw FallbackException.INSTANCE;
+    }
+
+    /** Thrown while linking for parameters, fields and expressions that are not supported. */
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
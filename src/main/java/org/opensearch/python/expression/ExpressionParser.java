@@ -0,0 +1,555 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.opensearch.python.antlr.Python3Lexer;
+import org.opensearch.python.antlr.Python3Parser;
+import org.opensearch.python.antlr.TwoStageParsing;
+import org.opensearch.python.expression.Expr.Builtin;
+import org.opensearch.python.expression.Expr.Comparison;
+import org.opensearch.python.expression.Expr.Condition;
+import org.opensearch.python.expression.Expr.Operator;
+
+/**
+ * Turns the ANTLR tree of a script into an {@link Expr} if the script is a numeric expression that
+ * {@link ExpressionEvaluator} supports:
+ *
+ * <ul>
+ *   <li>int and float literals, {@code _score}, {@code params['name']}
+ *   <li>{@code doc['field'].value}, {@code doc['field'].getValue()}, {@code doc['field'][i]},
+ *       {@code doc['field'].get(i)}, {@code doc['field'].size()}
+ *   <li>{@code + - * / // % **}, unary {@code -} and {@code +}
+ *   <li>{@code abs}, {@code min}, {@code max}, and {@code len}, {@code sum}, {@code min} and
+ *       {@code max} of {@code doc['field']}
+ *   <li>{@code math.sqrt}, {@code exp}, {@code log}, {@code log10}, {@code log1p}, {@code floor},
+ *       {@code ceil}, {@code fabs}, {@code pow}, {@code pi} and {@code e}, if the script starts
+ *       with {@code import math}
+ *   <li>conditional expressions whose condition combines comparisons with {@code and}, {@code
+ *       or} and {@code not}
+ * </ul>
+ */
+final class ExpressionParser {
+    private static final Map<String, Builtin> BUILTINS =
+            Map.of("abs", Builtin.ABS, "min", Builtin.MIN, "max", Builtin.MAX);
+    private static final Map<String, Builtin> MATH_FUNCTIONS =
+            Map.of(
+                    "sqrt", Builtin.SQRT,
+                    "exp", Builtin.EXP,
+                    "log", Builtin.LOG,
+                    "log10", Builtin.LOG10,
+                    "log1p", Builtin.LOG1P,
+                    "floor", Builtin.FLOOR,
+                    "ceil", Builtin.CEIL,
+                    "fabs", Builtin.FABS,
+                    "pow", Builtin.POW);
+    private static final Map<String, Double> MATH_CONSTANTS = Map.of("pi", Math.PI, "e", Math.E);
+    private static final Map<String, Comparison> COMPARISONS =
+            Map.of(
+                    "<", Comparison.LESS,
+                    "<=", Comparison.LESS_OR_EQUAL,
+                    ">", Comparison.GREATER,
+                    ">=", Comparison.GREATER_OR_EQUAL,
+                    "==", Comparison.EQUAL,
+                    "!=", Comparison.NOT_EQUAL);
+    private static final Map<String, Operator> OPERATORS =
+            Map.of(
+                    "+", Operator.ADD,
+                    "-", Operator.SUBTRACT,
+                    "*", Operator.MULTIPLY,
+                    "/", Operator.DIVIDE,
+                    "//", Operator.FLOOR_DIVIDE,
+                    "%", Operator.MODULO,
+                    "**", Operator.POWER);
+
+    private boolean mathImported = false;
+
+    private ExpressionParser() {}
+
+    /**
+     * @param code python code
+     * @return the expression, or null if the code is not an expression the evaluator supports
+     */
+    static Expr parse(String code) {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code + '\n'));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(
+                new BaseErrorListener() {
+                    @Override
+                    public void syntaxError(
+                            Recognizer<?, ?> recognizer,
+                            Object offendingSymbol,
+                            int line,
+                            int charPositionInLine,
+                            String msg,
+                            RecognitionException e) {
+                        throw new ParseCancellationException(msg);
+                    }
+                });
+        Python3Parser parser = new Python3Parser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parse(TwoStageParsing.parse(parser, Python3Parser::file_input));
+        } catch (ParseCancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param tree the parse tree of a script
+     * @return the expression, or null if the script is not an expression the evaluator supports
+     */
+    static Expr parse(Python3Parser.File_inputContext tree) {
+        try {
+            return new ExpressionParser().fileInput(tree);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    private Expr fileInput(Python3Parser.File_inputContext ctx) {
+        List<Python3Parser.Simple_stmtContext> statements = new ArrayList<>();
+        for (Python3Parser.StmtContext stmt : ctx.stmt()) {
+            if (stmt.simple_stmts() == null) {
+                throw new Unsupported();
+            }
+            statements.addAll(stmt.simple_stmts().simple_stmt());
+        }
+        if (statements.isEmpty()) {
+            throw new Unsupported();
+        }
+        // Only math can be imported, the value of the last statement is the result
+        int last = statements.size() - 1;
+        for (Python3Parser.Simple_stmtContext statement : statements.subList(0, last)) {
+            importMath(statement);
+        }
+        Python3Parser.Expr_stmtContext result = statements.get(last).expr_stmt();
+        if (result == null
+                || result.annassign() != null
+                || result.augassign() != null
+                || result.testlist_star_expr().size() != 1) {
+            throw new Unsupported();
+        }
+        Python3Parser.Testlist_star_exprContext value = result.testlist_star_expr(0);
+        if (!value.star_expr().isEmpty()) {
+            throw new Unsupported();
+        }
+        return single(value.test(), value.COMMA());
+    }
+
+    private void importMath(Python3Parser.Simple_stmtContext statement) {
+        Python3Parser.Import_stmtContext importStmt = statement.import_stmt();
+        if (importStmt == null || importStmt.import_name() == null) {
+            throw new Unsupported();
+        }
+        for (Python3Parser.Dotted_as_nameContext name :
+                importStmt.import_name().dotted_as_names().dotted_as_name()) {
+            if (name.AS() != null || !name.dotted_name().getText().equals("math")) {
+                throw new Unsupported();
+            }
+        }
+        mathImported = true;
+    }
+
+    private Expr single(List<Python3Parser.TestContext> tests, List<TerminalNode> commas) {
+        // A comma makes a tuple
+        if (tests.size() != 1 || !commas.isEmpty()) {
+            throw new Unsupported();
+        }
+        return test(tests.get(0));
+    }
+
+    private Expr test(Python3Parser.TestContext ctx) {
+        if (ctx.lambdef() != null) {
+            throw new Unsupported();
+        }
+        if (ctx.IF() != null) {
+            return new Expr.Conditional(
+                    condition(ctx.or_test(1)), value(ctx.or_test(0)), test(ctx.test()));
+        }
+        return value(ctx.or_test(0));
+    }
+
+    private Expr value(Python3Parser.Or_testContext ctx) {
+        // and, or and not return one of their operands or a bool, comparisons return a bool
+        if (ctx.and_test().size() != 1 || ctx.and_test(0).not_test().size() != 1) {
+            throw new Unsupported();
+        }
+        Python3Parser.Not_testContext notTest = ctx.and_test(0).not_test(0);
+        if (notTest.NOT() != null || notTest.comparison().expr().size() != 1) {
+            throw new Unsupported();
+        }
+        return expr(notTest.comparison().expr(0));
+    }
+
+    private Condition condition(Python3Parser.Or_testContext ctx) {
+        List<Condition> any = new ArrayList<>();
+        for (Python3Parser.And_testContext andTest : ctx.and_test()) {
+            List<Condition> all = new ArrayList<>();
+            for (Python3Parser.Not_testContext notTest : andTest.not_test()) {
+                all.add(condition(notTest));
+            }
+            any.add(all.size() == 1 ? all.get(0) : new Condition.All(all));
+        }
+        return any.size() == 1 ? any.get(0) : new Condition.Any(any);
+    }
+
+    private Condition condition(Python3Parser.Not_testContext ctx) {
+        if (ctx.NOT() != null) {
+            return new Condition.Not(condition(ctx.not_test()));
+        }
+        Python3Parser.ComparisonContext comparison = ctx.comparison();
+        if (comparison.comp_op().isEmpty()) {
+            Python3Parser.TestContext parenthesized = parenthesized(comparison.expr(0));
+            if (parenthesized != null && parenthesized.IF() == null) {
+                return condition(parenthesized.or_test(0));
+            }
+            return new Condition.Truthy(expr(comparison.expr(0)));
+        }
+        List<Expr> operands = new ArrayList<>();
+        for (Python3Parser.ExprContext operand : comparison.expr()) {
+            operands.add(expr(operand));
+        }
+        List<Comparison> comparisons = new ArrayList<>();
+        for (Python3Parser.Comp_opContext op : comparison.comp_op()) {
+            Comparison comparisonOp = COMPARISONS.get(op.getText());
+            if (comparisonOp == null) {
+                throw new Unsupported();
+            }
+            comparisons.add(comparisonOp);
+        }
+        return new Condition.Compare(operands, comparisons);
+    }
+
+    private Expr expr(Python3Parser.ExprContext ctx) {
+        if (ctx.atom_expr() != null) {
+            return atomExpr(ctx.atom_expr());
+        }
+        if (ctx.getChild(0) instanceof TerminalNode) {
+            // Unary operators, applied from right to left
+            Expr operand = expr(ctx.expr(0));
+            for (int i = ctx.getChildCount() - 2; i >= 0; i--) {
+                switch (ctx.getChild(i).getText()) {
+                    case "-" -> operand = new Expr.Negate(operand);
+                    case "+" -> {
+                        // Unary plus returns ints and floats as they are
+                    }
+                    default -> throw new Unsupported();
+                }
+            }
+            return operand;
+        }
+        Operator operator = OPERATORS.get(ctx.getChild(1).getText());
+        if (operator == null || operator == Operator.POWER && isPower(ctx.expr(0))) {
+            // The grammar groups a ** b ** c from the left, Python from the right
+            throw new Unsupported();
+        }
+        return new Expr.Binary(operator, expr(ctx.expr(0)), expr(ctx.expr(1)));
+    }
+
+    private static boolean isPower(Python3Parser.ExprContext ctx) {
+        return ctx.getChildCount() == 3 && ctx.getChild(1).getText().equals("**");
+    }
+
+    private Expr atomExpr(Python3Parser.Atom_exprContext ctx) {
+        if (ctx.AWAIT() != null) {
+            throw new Unsupported();
+        }
+        Python3Parser.AtomContext atom = ctx.atom();
+        List<Python3Parser.TrailerContext> trailers = ctx.trailer();
+        if (atom.NUMBER() != null && trailers.isEmpty()) {
+            return number(atom.NUMBER().getText());
+        }
+        if (atom.OPEN_PAREN() != null && atom.testlist_comp() != null && trailers.isEmpty()) {
+            Python3Parser.Testlist_compContext inner = atom.testlist_comp();
+            if (inner.comp_for() != null || !inner.star_expr().isEmpty()) {
+                throw new Unsupported();
+            }
+            return single(inner.test(), inner.COMMA());
+        }
+        if (atom.name() == null) {
+            throw new Unsupported();
+        }
+        String name = atom.name().getText();
+        switch (name) {
+            case "_score":
+                if (trailers.isEmpty()) {
+                    return new Expr.Score();
+                }
+                break;
+            case "params":
+                if (trailers.size() == 1) {
+                    return new Expr.Param(subscriptString(trailers.get(0)));
+                }
+                break;
+            case "doc":
+                return docValues(trailers);
+            case "math":
+                if (mathImported) {
+                    return math(trailers);
+                }
+                break;
+            case "len":
+            case "sum":
+                if (trailers.size() == 1) {
+                    String field = docArgument(arguments(trailers.get(0)));
+                    return name.equals("len")
+                            ? new Expr.DocCount(field)
+                            : new Expr.DocReduce(field, Builtin.SUM);
+                }
+                break;
+            default:
+                Builtin builtin = BUILTINS.get(name);
+                if (builtin != null && trailers.size() == 1) {
+                    return builtin(builtin, arguments(trailers.get(0)));
+                }
+        }
+        throw new Unsupported();
+    }
+
+    private Expr builtin(Builtin function, List<Python3Parser.TestContext> arguments) {
+        if (function != Builtin.ABS && arguments.size() == 1) {
+            // min and max of the values of a field
+            return new Expr.DocReduce(docArgument(arguments), function);
+        }
+        if (function == Builtin.ABS ? arguments.size() != 1 : arguments.size() < 2) {
+            throw new Unsupported();
+        }
+        return new Expr.Call(function, tests(arguments));
+    }
+
+    private Expr docValues(List<Python3Parser.TrailerContext> trailers) {
+        if (trailers.isEmpty()) {
+            throw new Unsupported();
+        }
+        String field = subscriptString(trailers.get(0));
+        List<Python3Parser.TrailerContext> access = trailers.subList(1, trailers.size());
+        if (access.size() == 1) {
+            Python3Parser.TrailerContext trailer = access.get(0);
+            if (trailer.subscriptlist() != null) {
+                return new Expr.DocElement(field, index(subscript(trailer)));
+            }
+            if (trailer.DOT() != null && trailer.name().getText().equals("value")) {
+                return new Expr.DocElement(field, 0);
+            }
+        } else if (access.size() == 2 && access.get(0).DOT() != null) {
+            List<Python3Parser.TestContext> arguments = arguments(access.get(1));
+            switch (access.get(0).name().getText()) {
+                case "getValue":
+                    if (arguments.isEmpty()) {
+                        return new Expr.DocElement(field, 0);
+                    }
+                    break;
+                case "size":
+                    if (arguments.isEmpty()) {
+                        return new Expr.DocCount(field);
+                    }
+                    break;
+                case "get":
+                    if (arguments.size() == 1) {
+                        return new Expr.DocElement(field, index(arguments.get(0)));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        throw new Unsupported();
+    }
+
+    private Expr math(List<Python3Parser.TrailerContext> trailers) {
+        if (trailers.isEmpty() || trailers.get(0).DOT() == null) {
+            throw new Unsupported();
+        }
+        String member = trailers.get(0).name().getText();
+        if (trailers.size() == 1 && MATH_CONSTANTS.containsKey(member)) {
+            return new Expr.FloatLiteral(MATH_CONSTANTS.get(member));
+        }
+        Builtin function = MATH_FUNCTIONS.get(member);
+        if (function == null || trailers.size() != 2) {
+            throw new Unsupported();
+        }
+        List<Python3Parser.TestContext> arguments = arguments(trailers.get(1));
+        int expected = switch (function) {
+            case POW -> 2;
+            case LOG -> arguments.size() == 2 ? 2 : 1;
+            default -> 1;
+        };
+        if (arguments.size() != expected) {
+            throw new Unsupported();
+        }
+        return new Expr.Call(function, tests(arguments));
+    }
+
+    private List<Expr> tests(List<Python3Parser.TestContext> tests) {
+        List<Expr> exprs = new ArrayList<>(tests.size());
+        for (Python3Parser.TestContext test : tests) {
+            exprs.add(test(test));
+        }
+        return exprs;
+    }
+
+    /** The positional arguments of a call trailer. */
+    private static List<Python3Parser.TestContext> arguments(
+            Python3Parser.TrailerContext trailer) {
+        if (trailer.OPEN_PAREN() == null) {
+            throw new Unsupported();
+        }
+        List<Python3Parser.TestContext> arguments = new ArrayList<>();
+        if (trailer.arglist() == null) {
+            return arguments;
+        }
+        for (Python3Parser.ArgumentContext argument : trailer.arglist().argument()) {
+            if (argument.test().size() != 1
+                    || argument.comp_for() != null
+                    || argument.STAR() != null
+                    || argument.POWER() != null) {
+                throw new Unsupported();
+            }
+            arguments.add(argument.test(0));
+        }
+        return arguments;
+    }
+
+    /** The field of a single {@code doc['field']} argument. */
+    private static String docArgument(List<Python3Parser.TestContext> arguments) {
+        if (arguments.size() == 1) {
+            Python3Parser.Atom_exprContext atomExpr = atomExpr(arguments.get(0));
+            if (atomExpr != null
+                    && atomExpr.AWAIT() == null
+                    && atomExpr.atom().getText().equals("doc")
+                    && atomExpr.trailer().size() == 1) {
+                return subscriptString(atomExpr.trailer(0));
+            }
+        }
+        throw new Unsupported();
+    }
+
+    private static Python3Parser.TestContext subscript(Python3Parser.TrailerContext trailer) {
+        if (trailer.subscriptlist() == null
+                || trailer.subscriptlist().subscript_().size() != 1
+                || trailer.subscriptlist().getChildCount() != 1) {
+            throw new Unsupported();
+        }
+        Python3Parser.Subscript_Context subscript = trailer.subscriptlist().subscript_(0);
+        if (subscript.COLON() != null || subscript.test().size() != 1) {
+            throw new Unsupported();
+        }
+        return subscript.test(0);
+    }
+
+    private static String subscriptString(Python3Parser.TrailerContext trailer) {
+        Python3Parser.Atom_exprContext atomExpr = atomExpr(subscript(trailer));
+        if (atomExpr == null
+                || !atomExpr.trailer().isEmpty()
+                || atomExpr.atom().STRING().size() != 1) {
+            throw new Unsupported();
+        }
+        String text = atomExpr.atom().STRING(0).getText();
+        // Plain string literals without escapes only
+        if (text.length() < 2
+                || text.indexOf('\\') >= 0
+                || !(text.startsWith("'") && text.endsWith("'")
+                        || text.startsWith("\"") && text.endsWith("\""))) {
+            throw new Unsupported();
+        }
+        return text.substring(1, text.length() - 1);
+    }
+
+    /** An int literal, possibly negated, used as an index. */
+    private static int index(Python3Parser.TestContext test) {
+        String text = test.getText();
+        boolean negative = text.startsWith("-");
+        String digits = negative ? text.substring(1) : text;
+        if (digits.isEmpty() || !digits.chars().allMatch(Character::isDigit)) {
+            throw new Unsupported();
+        }
+        try {
+            return Math.multiplyExact(negative ? -1 : 1, Integer.parseInt(digits));
+        } catch (NumberFormatException e) {
+            throw new Unsupported();
+        }
+    }
+
+    /** The atom expression a test consists of, or null if it is anything else. */
+    private static Python3Parser.Atom_exprContext atomExpr(Python3Parser.TestContext test) {
+        if (test.IF() != null || test.lambdef() != null) {
+            return null;
+        }
+        Python3Parser.Or_testContext orTest = test.or_test(0);
+        if (orTest.and_test().size() != 1 || orTest.and_test(0).not_test().size() != 1) {
+            return null;
+        }
+        Python3Parser.Not_testContext notTest = orTest.and_test(0).not_test(0);
+        if (notTest.NOT() != null || notTest.comparison().expr().size() != 1) {
+            return null;
+        }
+        return notTest.comparison().expr(0).atom_expr();
+    }
+
+    private static Python3Parser.TestContext parenthesized(Python3Parser.ExprContext expr) {
+        Python3Parser.Atom_exprContext atomExpr = expr.atom_expr();
+        if (atomExpr == null
+                || !atomExpr.trailer().isEmpty()
+                || atomExpr.atom().OPEN_PAREN() == null
+                || atomExpr.atom().testlist_comp() == null) {
+            return null;
+        }
+        Python3Parser.Testlist_compContext inner = atomExpr.atom().testlist_comp();
+        if (inner.test().size() != 1
+                || !inner.COMMA().isEmpty()
+                || inner.comp_for() != null
+                || !inner.star_expr().isEmpty()) {
+            return null;
+        }
+        return inner.test(0);
+    }
+
+    private static Expr number(String literal) {
+        String text = literal.replace("_", "").toLowerCase(Locale.ROOT);
+        if (text.endsWith("j")) {
+            // Complex numbers
+            throw new Unsupported();
+        }
+        try {
+            if (text.startsWith("0x")) {
+                return new Expr.IntLiteral(Long.parseLong(text.substring(2), 16));
+            }
+            if (text.startsWith("0o")) {
+                return new Expr.IntLiteral(Long.parseLong(text.substring(2), 8));
+            }
+            if (text.startsWith("0b")) {
+                return new Expr.IntLiteral(Long.parseLong(text.substring(2), 2));
+            }
+            if (text.chars().allMatch(Character::isDigit)) {
+                return new Expr.IntLiteral(Long.parseLong(text));
+            }
+            return new Expr.FloatLiteral(Double.parseDouble(text));
+        } catch (NumberFormatException e) {
+            // Ints that do not fit into a long
+            throw new Unsupported();
+        }
+    }
+
+    /** Thrown for code outside of the supported subset. */
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
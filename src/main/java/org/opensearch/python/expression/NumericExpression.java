@@ -0,0 +1,58 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.expression;
+
+import java.util.Map;
+import java.util.function.Function;
+import org.opensearch.python.NumericDocValuesBuffer;
+import org.opensearch.python.antlr.Python3Parser;
+
+/**
+ * A score script that is a plain numeric expression, like {@code sum(doc['ratings']) /
+ * len(doc['ratings']) * params['factor']}, compiled so that Java can evaluate it without Python.
+ * See {@link ExpressionParser} for the supported subset of Python.
+ *
+ * <p>Instances are immutable and shared by all executions of a script.
+ */
+public final class NumericExpression {
+    private final Expr expr;
+
+    private NumericExpression(Expr expr) {
+        this.expr = expr;
+    }
+
+    /**
+     * @param code python code
+     * @return the compiled expression, or null if the code is not an expression Java can evaluate
+     */
+    public static NumericExpression compile(String code) {
+        Expr expr = ExpressionParser.parse(code);
+        return expr == null ? null : new NumericExpression(expr);
+    }
+
+    /**
+     * @param tree the parse tree of a script
+     * @return the compiled expression, or null if the script is not an expression Java can
+     *     evaluate
+     */
+    public static NumericExpression compile(Python3Parser.File_inputContext tree) {
+        Expr expr = ExpressionParser.parse(tree);
+        return expr == null ? null : new NumericExpression(expr);
+    }
+
+    /**
+     * Creates an evaluator for the documents of a segment.
+     *
+     * @param params the script parameters
+     * @param fields the buffer backing the doc values of a field, or null if there is none
+     * @return the evaluator, or null if the parameters or fields the expression reads have types
+     *     the evaluator does not support, in which case the script has to run in Python
+     */
+    public ExpressionEvaluator link(
+            Map<String, ?> params, Function<String, NumericDocValuesBuffer> fields) {
+        return ExpressionEvaluator.link(expr, params, fields);
+    }
+}
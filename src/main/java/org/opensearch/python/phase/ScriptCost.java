@@ -0,0 +1,349 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.phase;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.opensearch.python.antlr.Python3Parser;
+import org.opensearch.python.antlr.Python3ParserBaseListener;
+
+/**
+ * A static estimate of how much work one execution of a script does, computed from its parse tree
+ * when the script is compiled.
+ *
+ * <p>Every simple statement and comprehension step costs 1 and every call of a known expensive
+ * function, like {@code sorted} or {@code re.compile}, costs {@value #EXPENSIVE_CALL_COST}, times
+ * the iterations of the loops around it. A loop over {@code range} with literal bounds or over a
+ * literal list or string runs as many times as it has elements, a {@code while} loop whose
+ * condition compares against a literal upper bound runs that many times. Any other loop, e.g. over
+ * the values of a multi-valued doc field, over {@code range(params['n'])} or an f-string, or a
+ * {@code while} loop without a literal bound, is unbounded and assumed to run
+ * {@value #UNBOUNDED_ITERATIONS} times.
+ *
+ * @param loopDepth the deepest nesting of loops and comprehensions, 0 if the script has none
+ * @param unboundedLoops the number of loops and comprehensions without a literal bound
+ * @param expensiveCalls the number of calls of known expensive functions
+ * @param estimate the estimated cost, saturated at {@link Long#MAX_VALUE}
+ */
+public record ScriptCost(int loopDepth, int unboundedLoops, int expensiveCalls, long estimate) {
+
+    /** The iterations assumed for loops whose bound is not known at compile time. */
+    public static final int UNBOUNDED_ITERATIONS = 100;
+
+    /** The cost of a call of a known expensive function, relative to a simple statement. */
+    public static final int EXPENSIVE_CALL_COST = 100;
+
+    // Functions whose cost grows with their input or that compile code, numpy also as np
+    private static final Set<String> EXPENSIVE_CALLS =
+            Set.of(
+                    "sorted",
+                    "eval",
+                    "exec",
+                    "compile",
+                    "deepcopy",
+                    "copy.deepcopy",
+                    "json.loads",
+                    "json.dumps",
+                    "re.compile",
+                    "re.match",
+                    "re.fullmatch",
+                    "re.search",
+                    "re.findall",
+                    "re.finditer",
+                    "re.sub",
+                    "re.split",
+                    "itertools.product",
+                    "itertools.permutations",
+                    "itertools.combinations",
+                    "numpy.sort",
+                    "numpy.argsort",
+                    "numpy.dot",
+                    "numpy.matmul",
+                    "numpy.linalg.inv",
+                    "numpy.linalg.solve",
+                    "numpy.linalg.svd",
+                    "numpy.linalg.eig");
+
+    // Methods that are expensive on whatever object they are called
+    private static final Set<String> EXPENSIVE_METHODS = Set.of("sort", "deepcopy");
+
+    /**
+     * Estimates the cost of a script.
+     *
+     * @param tree the parse tree of the script
+     * @return the cost of the script
+     */
+    public static ScriptCost estimate(ParseTree tree) {
+        CostListener listener = new CostListener();
+        new ParseTreeWalker().walk(listener, tree);
+        return new ScriptCost(
+                listener.maxDepth,
+                listener.unboundedLoops,
+                listener.expensiveCalls,
+                (long) listener.cost);
+    }
+
+    private static class CostListener extends Python3ParserBaseListener {
+        // The product of the iterations of the enclosing loops, one entry per loop
+        private final Deque<Double> multipliers = new ArrayDeque<>();
+        private int maxDepth;
+        private int unboundedLoops;
+        private int expensiveCalls;
+        private double cost;
+
+        private double multiplier() {
+            return multipliers.isEmpty() ? 1 : multipliers.peek();
+        }
+
+        private void enterLoop(long iterations) {
+            if (iterations < 0) {
+                unboundedLoops++;
+                iterations = UNBOUNDED_ITERATIONS;
+            }
+            multipliers.push(multiplier() * iterations);
+            maxDepth = Math.max(maxDepth, multipliers.size());
+        }
+
+        @Override
+        public void enterBlock(Python3Parser.BlockContext ctx) {
+            // The loop header, including the iterable, is evaluated once, only the body repeats
+            if (!isLoopBody(ctx)) {
+                return;
+            }
+            if (ctx.getParent() instanceof Python3Parser.For_stmtContext loop) {
+                enterLoop(iterations(loop.testlist()));
+            } else if (ctx.getParent() instanceof Python3Parser.While_stmtContext loop) {
+                enterLoop(whileIterations(loop.test()));
+            }
+        }
+
+        @Override
+        public void exitBlock(Python3Parser.BlockContext ctx) {
+            if (isLoopBody(ctx)) {
+                multipliers.pop();
+            }
+        }
+
+        @Override
+        public void enterComp_for(Python3Parser.Comp_forContext ctx) {
+            enterLoop(iterations(ctx.or_test()));
+            cost += multiplier();
+        }
+
+        @Override
+        public void exitComp_for(Python3Parser.Comp_forContext ctx) {
+            multipliers.pop();
+        }
+
+        @Override
+        public void enterSimple_stmt(Python3Parser.Simple_stmtContext ctx) {
+            cost += multiplier();
+        }
+
+        @Override
+        public void enterAtom_expr(Python3Parser.Atom_exprContext ctx) {
+            // The dotted name of the callee, null once it is not a plain name any more
+            String callee = ctx.atom().name() != null ? ctx.atom().name().getText() : null;
+            // The attribute a method call is made on, e.g. sort for params['l'].sort()
+            String method = null;
+            for (Python3Parser.TrailerContext trailer : ctx.trailer()) {
+                if (trailer.name() != null) {
+                    method = trailer.name().getText();
+                    callee = callee != null ? callee + "." + method : null;
+                    continue;
+                }
+                if (isCall(trailer) && isExpensive(callee, method)) {
+                    expensiveCalls++;
+                    cost += multiplier() * EXPENSIVE_CALL_COST;
+                }
+                callee = null;
+                method = null;
+            }
+        }
+    }
+
+    private static boolean isExpensive(String callee, String method) {
+        if (method != null && EXPENSIVE_METHODS.contains(method)) {
+            return true;
+        }
+        if (callee != null && callee.startsWith("np.")) {
+            callee = "numpy." + callee.substring("np.".length());
+        }
+        return callee != null && EXPENSIVE_CALLS.contains(callee);
+    }
+
+    private static boolean isLoopBody(Python3Parser.BlockContext block) {
+        if (block.getParent() instanceof Python3Parser.For_stmtContext loop) {
+            return loop.block(0) == block;
+        }
+        if (block.getParent() instanceof Python3Parser.While_stmtContext loop) {
+            return loop.block(0) == block;
+        }
+        return false;
+    }
+
+    private static boolean isCall(Python3Parser.TrailerContext trailer) {
+        return trailer.getChild(0).getText().equals("(");
+    }
+
+    /**
+     * @return the number of elements of a literal iterable, or -1 if it is not known
+     */
+    private static long iterations(ParseTree iterable) {
+        ParseTree node = unwrap(iterable);
+        if (node instanceof Python3Parser.Atom_exprContext atomExpr) {
+            return rangeLength(atomExpr);
+        }
+        if (!(node instanceof Python3Parser.AtomContext atom)) {
+            return -1;
+        }
+        if (!atom.STRING().isEmpty()) {
+            // Adjacent literals are concatenated
+            long length = 0;
+            for (TerminalNode string : atom.STRING()) {
+                long literalLength = stringLength(string.getText());
+                if (literalLength < 0) {
+                    return -1;
+                }
+                length += literalLength;
+            }
+            return length;
+        }
+        if (atom.OPEN_BRACK() == null && atom.OPEN_PAREN() == null) {
+            return -1;
+        }
+        Python3Parser.Testlist_compContext elements = atom.testlist_comp();
+        if (elements == null) {
+            return 0;
+        }
+        if (elements.comp_for() != null || !elements.star_expr().isEmpty()) {
+            return -1;
+        }
+        if (atom.OPEN_PAREN() != null && elements.COMMA().isEmpty()) {
+            // Parentheses around a single expression
+            return iterations(elements.test(0));
+        }
+        return elements.test().size();
+    }
+
+    /**
+     * @return the length of a string or bytes literal without its prefix and quotes, escape
+     *     sequences counting as several characters, or -1 for f-strings
+     */
+    private static long stringLength(String literal) {
+        int prefix = 0;
+        while (Character.isLetter(literal.charAt(prefix))) {
+            prefix++;
+        }
+        if (literal.substring(0, prefix).toLowerCase(Locale.ROOT).contains("f")) {
+            return -1;
+        }
+        boolean triple = literal.startsWith("\"\"\"", prefix) || literal.startsWith("'''", prefix);
+        int quotes = triple ? 3 : 1;
+        return literal.length() - prefix - 2 * quotes;
+    }
+
+    /**
+     * @return the length of a {@code range} call with integer literal arguments, or -1
+     */
+    private static long rangeLength(Python3Parser.Atom_exprContext atomExpr) {
+        List<Python3Parser.TrailerContext> trailers = atomExpr.trailer();
+        if (atomExpr.atom().name() == null
+                || !atomExpr.atom().name().getText().equals("range")
+                || trailers.size() != 1
+                || !isCall(trailers.get(0))
+                || trailers.get(0).arglist() == null) {
+            return -1;
+        }
+        List<Python3Parser.ArgumentContext> arguments = trailers.get(0).arglist().argument();
+        if (arguments.size() > 3) {
+            return -1;
+        }
+        long[] values = new long[arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            Python3Parser.ArgumentContext argument = arguments.get(i);
+            Long value = argument.getChildCount() == 1 ? intLiteral(argument.test(0)) : null;
+            if (value == null) {
+                return -1;
+            }
+            values[i] = value;
+        }
+        long start = values.length > 1 ? values[0] : 0;
+        long stop = values.length > 1 ? values[1] : values[0];
+        long step = values.length > 2 ? values[2] : 1;
+        if (step == 0) {
+            return -1;
+        }
+        // Ceiling division, in doubles so that huge bounds cannot overflow
+        return (long) Math.max(0, Math.ceil(((double) stop - start) / step));
+    }
+
+    /**
+     * @return the literal upper bound of a {@code while} condition like {@code n < 10} or {@code
+     *     10 >= n}, or -1
+     */
+    private static long whileIterations(Python3Parser.TestContext condition) {
+        if (!(unwrap(condition) instanceof Python3Parser.ComparisonContext comparison)
+                || comparison.comp_op().size() != 1) {
+            return -1;
+        }
+        String op = comparison.comp_op(0).getText();
+        Long bound = null;
+        if (op.equals("<") || op.equals("<=")) {
+            bound = intLiteral(comparison.expr(1));
+        } else if (op.equals(">") || op.equals(">=")) {
+            bound = intLiteral(comparison.expr(0));
+        }
+        return bound == null ? -1 : Math.max(bound, 0);
+    }
+
+    /**
+     * @return the value of an integer literal, or null if the expression is not one
+     */
+    private static Long intLiteral(ParseTree expression) {
+        if (!(unwrap(expression) instanceof Python3Parser.AtomContext atom)
+                || atom.NUMBER() == null) {
+            return null;
+        }
+        String text = atom.getText().replace("_", "").toLowerCase(Locale.ROOT);
+        try {
+            if (text.startsWith("0x")) {
+                return Long.parseLong(text.substring(2), 16);
+            }
+            if (text.startsWith("0o")) {
+                return Long.parseLong(text.substring(2), 8);
+            }
+            if (text.startsWith("0b")) {
+                return Long.parseLong(text.substring(2), 2);
+            }
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // Floats and integers beyond long
+            return null;
+        }
+    }
+
+    /**
+     * Descends through the single-child rules that wrap an expression, e.g. test, or_test and
+     * atom_expr, down to the first node that is an atom or has several children.
+     */
+    private static ParseTree unwrap(ParseTree node) {
+        while (!(node instanceof Python3Parser.AtomContext)
+                && node instanceof ParserRuleContext
+                && node.getChildCount() == 1
+                && node.getChild(0) instanceof ParserRuleContext) {
+            node = node.getChild(0);
+        }
+        return node;
+    }
+}
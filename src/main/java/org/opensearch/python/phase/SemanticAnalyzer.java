@@ -11,11 +11,13 @@ import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.opensearch.python.antlr.Python3Lexer;
 import org.opensearch.python.antlr.Python3Parser;
 import org.opensearch.python.antlr.Python3ParserBaseListener;
+import org.opensearch.python.antlr.TwoStageParsing;
 import org.opensearch.script.ScriptException;
 
 public class SemanticAnalyzer {
@@ -59,14 +61,22 @@ public class SemanticAnalyzer {
         lexer.addErrorListener(errorListener);
     }
 
-    public void checkSemantic() {
+    /**
+     * Parses the code and checks it.
+     *
+     * @return the parse tree of the code
+     * @throws ScriptException if the code has syntax errors or fails the semantic checks
+     */
+    public Python3Parser.File_inputContext checkSemantic() {
         try {
             // Parse the input as a statement (stmt is the rule for statements in Python)
-            ParseTree tree = parser.file_input();
+            Python3Parser.File_inputContext tree =
+                    TwoStageParsing.parse(parser, Python3Parser::file_input);
 
             // Walk the parse tree to perform semantic checks
             Python3SemanticCheckParser semanticCheckParser = new Python3SemanticCheckParser();
             new ParseTreeWalker().walk(semanticCheckParser, tree);
+            return tree;
         } catch (IllegalArgumentException e) {
             // Re-throw semantic analysis errors as-is
             throw new ScriptException(e.getMessage(), e, List.of(), code, "python");
@@ -76,6 +86,13 @@ public class SemanticAnalyzer {
         }
     }
 
+    /**
+     * @return the tokens of the code, all of them once {@link #checkSemantic} parsed it
+     */
+    public List<Token> tokens() {
+        return tokens.getTokens();
+    }
+
     public static class Python3SemanticCheckParser extends Python3ParserBaseListener {
         @Override
         public void enterWhile_stmt(Python3Parser.While_stmtContext ctx) {
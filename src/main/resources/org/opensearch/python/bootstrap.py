@@ -0,0 +1,655 @@
+#
+# Copyright OpenSearch Contributors
+# SPDX-License-Identifier: Apache-2.0
+#
+
+# Evaluated once in every pooled Python context. All helpers are created inside a function so
+# that __main__ only gains a single name, which the Java side removes right after calling it.
+
+
+def _opensearch_bootstrap():
+    import array
+    import ast
+    import builtins
+    import collections.abc
+    import copy
+    import sys
+    import types
+
+    main = sys.modules["__main__"].__dict__
+    builtins_dict = builtins.__dict__
+    missing = object()
+
+    baseline_main = {}
+    baseline_builtins = {}
+    baseline_modules = {}
+    # The attributes of every baseline module, keyed by module name
+    baseline_module_dicts = {}
+    # The attributes of modules imported since the last restore, recorded as soon as they are
+    # initialized, before a script can change them
+    imported_module_dicts = {}
+    # The names of baseline modules by the last component of their name, e.g. path for os.path
+    modules_by_attribute = {}
+    # The names of the modules imported since the last restore, whether or not they were loaded
+    touched_modules = set()
+    baseline_path = []
+    baseline_recursion_limit = [sys.getrecursionlimit()]
+    baseline_threads = [0]
+
+    # Positional arguments of the function every script is wrapped into
+    script_arguments = ("params", "doc", "ctx", "_score")
+    script_function_name = "__os_script"
+
+    # Modules and names that reach modules without naming them, e.g. sys.modules or getattr(m, n).
+    # restore() checks every module after a script that uses one of them.
+    sweep_modules = frozenset(("sys", "importlib", "gc"))
+    sweep_names = frozenset(
+        (
+            "getattr",
+            "setattr",
+            "delattr",
+            "vars",
+            "globals",
+            "locals",
+            "eval",
+            "exec",
+            "compile",
+            "__import__",
+            "__dict__",
+            "__globals__",
+            "__builtins__",
+            "__subclasses__",
+            "__getattribute__",
+            "__loader__",
+            "__spec__",
+        )
+    )
+
+    def active_threads():
+        threading = sys.modules.get("threading")
+        return threading.active_count() if threading is not None else 1
+
+    def restore_dict(current, baseline):
+        # Only names that were added, removed or rebound are touched
+        if len(current) != len(baseline):
+            for name in [name for name in current if name not in baseline]:
+                del current[name]
+        for name, value in baseline.items():
+            if current.get(name, missing) is not value:
+                current[name] = value
+
+    def is_initializing(module):
+        spec = getattr(module, "__spec__", None)
+        return getattr(spec, "_initializing", False)
+
+    original_import = builtins.__import__
+
+    def recording_import(name, globals=None, locals=None, fromlist=(), level=0):
+        count = len(sys.modules)
+        module = original_import(name, globals, locals, fromlist, level)
+        # import a.b binds a and touches a.b, from a import b touches a.b if it is a module
+        parts = name.split(".") if level == 0 else []
+        for end in range(1, len(parts) + 1):
+            touched_modules.add(".".join(parts[:end]))
+        base = getattr(module, "__name__", None)
+        if isinstance(base, str):
+            touched_modules.add(base)
+            for item in fromlist or ():
+                touched_modules.add(base + "." + item)
+        if len(sys.modules) != count:
+            for module_name, imported in list(sys.modules.items()):
+                if (
+                    module_name not in baseline_modules
+                    and module_name not in imported_module_dicts
+                    and isinstance(imported, types.ModuleType)
+                    and not is_initializing(imported)
+                ):
+                    imported_module_dicts[module_name] = dict(imported.__dict__)
+        return module
+
+    def is_library_module(module):
+        # Modules loaded from the file system (stdlib, site-packages) are pristine and can be kept
+        # to avoid importing them again. Modules created by a script have no origin.
+        spec = getattr(module, "__spec__", None)
+        return getattr(module, "__file__", None) is not None or (
+            spec is not None and spec.origin in ("built-in", "frozen")
+        )
+
+    def code_names(code):
+        """Returns the global and attribute names a code object and its nested code objects use."""
+        names = set()
+        pending = [code]
+        while pending:
+            code = pending.pop()
+            names.update(code.co_names)
+            pending.extend(const for const in code.co_consts if isinstance(const, types.CodeType))
+        return frozenset(names)
+
+    # Statements and expressions that are only valid in functions, with the keyword they report
+    function_only_nodes = ((ast.Yield, "yield"), (ast.YieldFrom, "yield"), (ast.Return, "return"))
+    # Builtins that read or change the variables of their caller
+    scope_names = frozenset(("exec", "eval", "locals", "globals", "vars"))
+
+    def module_statement(tree):
+        """Returns the first yield, yield from or return of a module that is not inside a function,
+        along with its keyword, or None.
+
+        Only the bodies of functions, lambdas and classes are skipped; decorators, defaults and base
+        classes are evaluated in the module.
+        """
+        pending = [tree]
+        while pending:
+            node = pending.pop()
+            for node_type, keyword in function_only_nodes:
+                if isinstance(node, node_type):
+                    return node, keyword
+            children = list(ast.iter_child_nodes(node))
+            if isinstance(node, (ast.FunctionDef, ast.AsyncFunctionDef, ast.Lambda, ast.ClassDef)):
+                scoped = node.body if isinstance(node.body, list) else [node.body]
+                children = [child for child in children if all(child is not b for b in scoped)]
+            pending.extend(reversed(children))
+        return None
+
+    def uses_scope(tree):
+        """Whether a script may call a builtin that reads or changes the variables of its scope."""
+        for node in ast.walk(tree):
+            if isinstance(node, ast.Name) and node.id in scope_names:
+                return True
+            if isinstance(node, ast.Attribute) and node.attr in scope_names:
+                return True
+        return False
+
+    def wrap(code, filename):
+        """Wraps a script into a function taking the script variables as arguments.
+
+        The value of the last expression statement, if any, becomes the return value, which matches
+        what evaluating the script returns. Each script gets its own globals, so state defined by a
+        script never collides with __main__. Returns None if the script cannot be wrapped, in which
+        case it has to be evaluated as is: a star import is not allowed in a function, and exec,
+        eval, locals or globals would see the locals of the wrapper instead of the module. Raises a
+        SyntaxError for a yield or return outside of functions, which would turn the wrapper into a
+        generator or end the script early.
+        """
+        try:
+            tree = ast.parse(code, filename)
+        except SyntaxError:
+            # Evaluating the script reports the error to the user
+            return None
+        statement = module_statement(tree)
+        if statement is not None:
+            node, keyword = statement
+            lines = code.splitlines()
+            line = lines[node.lineno - 1] if node.lineno <= len(lines) else None
+            raise SyntaxError(
+                f"'{keyword}' outside function", (filename, node.lineno, node.col_offset + 1, line)
+            )
+        if uses_scope(tree):
+            return None
+        body = tree.body
+        if body and isinstance(body[-1], ast.Expr):
+            body[-1] = ast.copy_location(ast.Return(value=body[-1].value), body[-1])
+        function = ast.FunctionDef(
+            name=script_function_name,
+            args=ast.arguments(
+                posonlyargs=[],
+                args=[ast.arg(arg=name) for name in script_arguments],
+                kwonlyargs=[],
+                kw_defaults=[],
+                defaults=[],
+            ),
+            body=body or [ast.Pass()],
+            decorator_list=[],
+            returns=None,
+        )
+        if sys.version_info >= (3, 12):
+            function.type_params = []
+        module = ast.Module(body=[function], type_ignores=[])
+        ast.fix_missing_locations(module)
+        try:
+            compiled = compile(module, filename, "exec")
+        except SyntaxError:
+            return None
+        namespace = {"__builtins__": builtins, "__name__": "__main__"}
+        exec(compiled, namespace)
+        function = namespace.pop(script_function_name)
+        function.script_names = code_names(compiled)
+        return function
+
+    class Column:
+        """Values of one doc field for a block of documents.
+
+        column[i] holds the list of values of the i-th document of the block, values holds the
+        values of all documents in document order and offsets the position of the first value of
+        every document. For long and double fields, values and offsets are memoryviews of the
+        buffers of the block, which numpy.frombuffer and numpy.asarray use without copying.
+        """
+
+        __slots__ = ("values", "offsets")
+
+        def __init__(self, values, offsets):
+            self.values = values
+            self.offsets = offsets
+
+        def __len__(self):
+            return len(self.offsets) - 1
+
+        def __getitem__(self, index):
+            index = range(len(self))[index]
+            return list(self.values[self.offsets[index] : self.offsets[index + 1]])
+
+        def __iter__(self):
+            return (self[index] for index in range(len(self)))
+
+        def first(self, missing=None):
+            """The first value of every document, or missing for documents without a value."""
+            values, offsets = self.values, self.offsets
+            return [
+                values[offsets[index]] if offsets[index] < offsets[index + 1] else missing
+                for index in range(len(self))
+            ]
+
+    class DocValues:
+        """Numeric doc values of the current document, backed by a NumericDocValuesBuffer.
+
+        Values are read from the buffer through a memoryview, so iterating, indexing or summing
+        them does not convert boxed Java numbers. The buffer protocol and __array__ let memoryview,
+        numpy.frombuffer and numpy.asarray use the values without copying them. Booleans and dates
+        are stored as numbers in the buffer but returned as objects by element access.
+        """
+
+        __slots__ = ("_source", "_kind", "_generation", "_view")
+
+        def __init__(self, source):
+            self._source = source
+            self._kind = source.kind()
+            self._generation = -1
+            self._view = None
+
+        def _values(self):
+            source = self._source
+            count = source.count()
+            generation = source.generation()
+            if generation != self._generation:
+                # The buffer was replaced by a larger one
+                self._view = memoryview(source.buffer()).cast(source.format())
+                self._generation = generation
+            return self._view[:count]
+
+        def _element(self, values, index):
+            if self._kind == "boolean":
+                return bool(values[index])
+            if self._kind == "date":
+                return self._source.element(range(len(values))[index])
+            return values[index]
+
+        def __len__(self):
+            return self._source.count()
+
+        def __getitem__(self, index):
+            values = self._values()
+            if isinstance(index, slice):
+                return [self._element(values, i) for i in range(*index.indices(len(values)))]
+            return self._element(values, index)
+
+        def __iter__(self):
+            values = self._values()
+            if self._kind in ("long", "double"):
+                return iter(values)
+            return (self._element(values, index) for index in range(len(values)))
+
+        def __buffer__(self, flags):
+            return self._values()
+
+        def __array__(self, dtype=None, copy=None):
+            import numpy
+
+            array = numpy.asarray(self._values())
+            if self._kind == "boolean":
+                array = array.astype(bool)
+            return array if dtype is None else array.astype(dtype, copy=False)
+
+        def __repr__(self):
+            return repr(list(self))
+
+        @property
+        def value(self):
+            values = self._values()
+            if len(values) == 0:
+                raise ValueError(
+                    "A document doesn't have a value for a field! "
+                    "Use doc[<field>].size()==0 to check if a document is missing a field!"
+                )
+            return self._element(values, 0)
+
+        @property
+        def empty(self):
+            return len(self) == 0
+
+        @property
+        def values(self):
+            return self._values()
+
+        def getValue(self):
+            return self.value
+
+        def get(self, index):
+            return self[index]
+
+        def size(self):
+            return len(self)
+
+        def isEmpty(self):
+            return self.empty
+
+    class Params(dict):
+        """Read-only parameters of a script, shared by all documents a leaf script runs on.
+
+        Entries that change per document, like _source, are not copied but read from the Java
+        parameters of the leaf script when they are accessed. Iterating, len() and the views
+        include them, so params behaves like one dict of all entries.
+        """
+
+        __slots__ = ("_dynamic",)
+
+        def __init__(self, frozen, dynamic=None):
+            dict.__init__(self, frozen)
+            self._dynamic = dynamic
+
+        def _dynamic_keys(self):
+            dynamic = self._dynamic
+            if dynamic is None:
+                return []
+            return [key for key in dynamic if not dict.__contains__(self, key)]
+
+        def __missing__(self, key):
+            dynamic = self._dynamic
+            if dynamic is not None and key in dynamic:
+                return dynamic[key]
+            raise KeyError(key)
+
+        def __contains__(self, key):
+            return dict.__contains__(self, key) or (
+                self._dynamic is not None and key in self._dynamic
+            )
+
+        def __iter__(self):
+            yield from dict.__iter__(self)
+            yield from self._dynamic_keys()
+
+        def __len__(self):
+            return dict.__len__(self) + len(self._dynamic_keys())
+
+        def __eq__(self, other):
+            return dict(self.items()) == other
+
+        def __ne__(self, other):
+            return not self == other
+
+        __hash__ = None
+
+        def __repr__(self):
+            return repr(dict(self.items()))
+
+        def keys(self):
+            return collections.abc.KeysView(self)
+
+        def values(self):
+            return collections.abc.ValuesView(self)
+
+        def items(self):
+            return collections.abc.ItemsView(self)
+
+        def get(self, key, default=None):
+            return self[key] if key in self else default
+
+        def copy(self):
+            return dict(self.items())
+
+        def __or__(self, other):
+            return dict(self.items()) | other
+
+        def __ror__(self, other):
+            return other | dict(self.items())
+
+        def __reduce_ex__(self, protocol):
+            # Copies, e.g. copy.copy(params), are plain dicts the script can modify
+            return dict, (dict(self.items()),)
+
+        def __deepcopy__(self, memo):
+            # The entries read per document are Java objects, which are shared instead of copied
+            copied = {key: copy.deepcopy(value, memo) for key, value in dict.items(self)}
+            copied.update((key, self[key]) for key in self._dynamic_keys())
+            return copied
+
+        def _read_only(self, *args, **kwargs):
+            raise TypeError("params are read-only")
+
+        __setitem__ = __delitem__ = __ior__ = _read_only
+        clear = pop = popitem = setdefault = update = _read_only
+
+    class ParamList(list):
+        """A read-only list parameter, which is still a list for isinstance checks and operators."""
+
+        __slots__ = ()
+
+        def _read_only(self, *args, **kwargs):
+            raise TypeError("params are read-only")
+
+        def __reduce_ex__(self, protocol):
+            # Copies, e.g. copy.copy(params['l']), are plain lists the script can modify
+            return list, (list(self),)
+
+        __setitem__ = __delitem__ = __iadd__ = __imul__ = _read_only
+        append = extend = insert = pop = remove = clear = sort = reverse = _read_only
+
+    def freeze(value):
+        """Deeply converts a parameter value built on the Java side into read-only Python values."""
+        if isinstance(value, dict):
+            return Params({key: freeze(item) for key, item in value.items()})
+        if isinstance(value, list):
+            return ParamList(freeze(item) for item in value)
+        return value
+
+    def pack(values):
+        """Packs a sequence of numbers into an array the host copies in one go.
+
+        Returns an array('d') if all values are floats and an array('q') if all values are ints that
+        fit into 64 bits. Returns None for anything else, which the host converts value by value.
+        """
+        if isinstance(values, array.array):
+            return values if values.typecode in ("d", "q") else None
+        dtype = getattr(values, "dtype", None)
+        if dtype is not None and dtype.kind in ("f", "i") and getattr(values, "ndim", 0) == 1:
+            # One-dimensional numpy arrays, without importing numpy
+            typecode = "d" if dtype.kind == "f" else "q"
+            packed = array.array(typecode)
+            packed.frombytes(values.astype(typecode, copy=False).tobytes())
+            return packed
+        if not isinstance(values, (list, tuple)):
+            return None
+        kinds = set(map(type, values))
+        if kinds == {float}:
+            return array.array("d", values)
+        if kinds == {int}:
+            try:
+                return array.array("q", values)
+            except OverflowError:
+                return None
+        return None
+
+    def batch(code, filename, function_name):
+        """Compiles a script that scores blocks of documents with a module level function.
+
+        The returned function takes a DocValueColumns block and the script parameters. The script
+        is run once per context, in its own globals, the first time a block is scored, so module
+        level imports and setup are shared by all blocks scored on the context. The batch function
+        is then called with the columns as doc and the query scores of the block as an array('d').
+        """
+        compiled = compile(code, filename, "exec")
+        namespace = {}
+        # The memoryviews of the buffers of the current columns, see DocValueColumns.generation()
+        views = {}
+
+        def wrap_buffers(columns):
+            views.clear()
+            for index in range(columns.fieldCount()):
+                values_format = columns.format(index)
+                values = None
+                if values_format is not None:
+                    values = memoryview(columns.numericValues(index)).cast(values_format)
+                views[index] = (values, memoryview(columns.offsets(index)).cast("i"))
+            views["scores"] = memoryview(columns.scores())
+            views["generation"] = columns.generation()
+
+        def run(columns, params):
+            if not namespace:
+                module = {"__builtins__": builtins, "__name__": "__main__"}
+                exec(compiled, module)
+                namespace.update(module)
+            if views.get("generation") != columns.generation():
+                wrap_buffers(columns)
+            size = columns.size()
+            doc = {}
+            for index in range(columns.fieldCount()):
+                values, offsets = views[index]
+                count = columns.valueCount(index)
+                values = values[:count] if values is not None else list(columns.objectValues(index))
+                doc[columns.field(index)] = Column(values, offsets[: size + 1])
+            block_scores = array.array("d")
+            block_scores.frombytes(views["scores"][: size * block_scores.itemsize])
+            scores = array.array("d", namespace[function_name](doc, block_scores, params))
+            if len(scores) != size:
+                raise ValueError(
+                    f"{function_name} returned {len(scores)} scores for a block of {size} documents"
+                )
+            return scores
+
+        run.script_names = code_names(compiled)
+        return run
+
+    def snapshot():
+        """Records the current state as the baseline that restore() goes back to."""
+        baseline_main.clear()
+        baseline_main.update(main)
+        builtins.__import__ = recording_import
+        baseline_builtins.clear()
+        baseline_builtins.update(builtins_dict)
+        baseline_modules.clear()
+        baseline_modules.update(sys.modules)
+        baseline_module_dicts.clear()
+        for name, module in baseline_modules.items():
+            if not isinstance(module, types.ModuleType):
+                continue
+            # __main__ and builtins are restored on their own
+            if module.__dict__ is not main and module.__dict__ is not builtins_dict:
+                baseline_module_dicts[name] = dict(module.__dict__)
+        modules_by_attribute.clear()
+        for name in baseline_module_dicts:
+            modules_by_attribute.setdefault(name.rpartition(".")[2], []).append(name)
+        imported_module_dicts.clear()
+        touched_modules.clear()
+        baseline_path[:] = sys.path
+        baseline_recursion_limit[0] = sys.getrecursionlimit()
+        baseline_threads[0] = active_threads()
+
+    def adopt(names):
+        """Keeps the library modules a script imported in the baseline."""
+        for name in names:
+            module = sys.modules[name]
+            baseline_modules[name] = module
+            attributes = imported_module_dicts.get(name)
+            if attributes is None:
+                # Modules imported with importlib.import_module() are not recorded on import
+                attributes = dict(module.__dict__)
+            baseline_module_dicts[name] = attributes
+            modules_by_attribute.setdefault(name.rpartition(".")[2], []).append(name)
+        for name in names:
+            # Importing a submodule binds it in its parent, which the baseline of the parent lacks
+            parent, _, child = name.rpartition(".")
+            attributes = baseline_module_dicts.get(parent)
+            module = sys.modules[name]
+            if attributes is not None and getattr(sys.modules.get(parent), child, None) is module:
+                attributes[child] = module
+
+    def restore(sweep=False, *functions):
+        """Brings the context back to the baseline.
+
+        functions are the script functions run since the last restore, as returned by wrap() and
+        batch(). Names a wrapped script declared global are dropped from its globals as well.
+        Attributes a script set on or deleted from a module, e.g. json.dumps = ..., are restored
+        too. Only the modules a script could have touched are checked: the ones it imported and
+        the ones named like a name its code uses. Every module is checked if sweep is true, e.g.
+        because a script was evaluated as is, or if a script uses sys or a name like getattr that
+        reaches modules without naming them. Library modules imported since the last restore are
+        kept, with the attributes they had right after they were imported. Returns False if the
+        context holds state that cannot be undone, in which case it must be discarded.
+        """
+        if sys.modules.get("__main__") is None or sys.modules["__main__"].__dict__ is not main:
+            return False
+        if sys.gettrace() is not None or sys.getprofile() is not None:
+            return False
+        if active_threads() > baseline_threads[0]:
+            # A script started a thread that may still touch the context
+            return False
+
+        restore_dict(main, baseline_main)
+        touched = touched_modules
+        for function in functions:
+            if function.__name__ == script_function_name:
+                namespace = function.__globals__
+                if len(namespace) != 2 or namespace.get("__builtins__") is not builtins:
+                    namespace.clear()
+                    namespace.update(__builtins__=builtins, __name__="__main__")
+            names = getattr(function, "script_names", None)
+            if names is None or not names.isdisjoint(sweep_names):
+                sweep = True
+            else:
+                for name in names:
+                    touched.update(modules_by_attribute.get(name, ()))
+        if not touched.isdisjoint(sweep_modules):
+            sweep = True
+        restore_dict(builtins_dict, baseline_builtins)
+
+        modules = sys.modules
+        if len(modules) != len(baseline_modules):
+            adopted = []
+            for name in [name for name in modules if name not in baseline_modules]:
+                module = modules[name]
+                if isinstance(module, types.ModuleType) and is_library_module(module):
+                    adopted.append(name)
+                else:
+                    del modules[name]
+            adopt(adopted)
+            touched.update(adopted)
+        imported_module_dicts.clear()
+        if sweep:
+            for name, module in baseline_modules.items():
+                if modules.get(name, missing) is not module:
+                    modules[name] = module
+                attributes = baseline_module_dicts.get(name)
+                if attributes is not None:
+                    restore_dict(module.__dict__, attributes)
+        else:
+            # Replacing an entry of sys.modules needs sys or importlib, which sweeps
+            for name in touched:
+                attributes = baseline_module_dicts.get(name)
+                if attributes is not None:
+                    restore_dict(baseline_modules[name].__dict__, attributes)
+        touched.clear()
+
+        if sys.path != baseline_path:
+            sys.path[:] = baseline_path
+        if sys.getrecursionlimit() != baseline_recursion_limit[0]:
+            sys.setrecursionlimit(baseline_recursion_limit[0])
+        return True
+
+    return types.SimpleNamespace(
+        snapshot=snapshot,
+        restore=restore,
+        wrap=wrap,
+        batch=batch,
+        DocValues=DocValues,
+        Params=Params,
+        freeze=freeze,
+        pack=pack,
+    )
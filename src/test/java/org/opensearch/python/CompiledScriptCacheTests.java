@@ -0,0 +1,72 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.script.ScriptException;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class CompiledScriptCacheTests extends OpenSearchTestCase {
+
+    public void testIdenticalScriptsCompileOnce() {
+        CompiledScriptCache cache = new CompiledScriptCache(Settings.EMPTY);
+        CompiledPythonScript script = cache.compile(null, "doc['a'].value * 2");
+        assertSame(script, cache.compile(null, "doc['a'].value * 2"));
+        assertNotSame(script, cache.compile(null, "doc['a'].value * 3"));
+        // The name of stored scripts carries their id
+        assertNotSame(script, cache.compile("double", "doc['a'].value * 2"));
+    }
+
+    public void testInlineScriptsAreNamedByHash() {
+        CompiledScriptCache cache = new CompiledScriptCache(Settings.EMPTY);
+        String code = "doc['a'].value * 2";
+        // The script service passes the source of inline scripts as their id
+        CompiledPythonScript script = cache.compile(code, code, compiled -> {});
+        assertFalse(script.name(), script.name().contains(code));
+        assertEquals(CompiledPythonScript.name(null, code), script.name());
+        assertSame(script, cache.compile(null, code));
+        assertEquals(script.name(), script.source().getName());
+        assertTrue(cache.compile("double", code).name().startsWith("double-"));
+    }
+
+    public void testCompileErrorsAreNotCached() {
+        CompiledScriptCache cache = new CompiledScriptCache(Settings.EMPTY);
+        for (int i = 0; i < 2; i++) {
+            expectThrows(ScriptException.class, () -> cache.compile(null, "while True:\n    pass"));
+        }
+    }
+
+    public void testOnCompileRunsOncePerCompiledScript() {
+        CompiledScriptCache cache = new CompiledScriptCache(Settings.EMPTY);
+        AtomicInteger compiled = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            cache.compile(null, "doc['a'].value * 2", script -> compiled.incrementAndGet());
+        }
+        assertEquals(1, compiled.get());
+        // Scripts the callback fails for are not cached
+        for (int i = 0; i < 2; i++) {
+            expectThrows(
+                    IllegalArgumentException.class,
+                    () ->
+                            cache.compile(
+                                    null,
+                                    "doc['a'].value * 3",
+                                    script -> {
+                                        compiled.incrementAndGet();
+                                        throw new IllegalArgumentException("rejected");
+                                    }));
+        }
+        assertEquals(3, compiled.get());
+    }
+
+    public void testDisabled() {
+        Settings settings =
+                Settings.builder().put(CompiledScriptCache.SIZE_SETTING.getKey(), 0).build();
+        CompiledScriptCache cache = new CompiledScriptCache(settings);
+        assertNotSame(cache.compile(null, "1 + 1"), cache.compile(null, "1 + 1"));
+    }
+}
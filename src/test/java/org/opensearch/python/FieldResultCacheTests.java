@@ -0,0 +1,141 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class FieldResultCacheTests extends OpenSearchTestCase {
+
+    public void testDisabledByDefault() throws Exception {
+        FieldResultCache cache = new FieldResultCache(Settings.EMPTY);
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            assertNull(cache.segment(reader.leaves().get(0)));
+        }
+    }
+
+    public void testCachesPerScriptParamsAndDocument() throws Exception {
+        FieldResultCache cache = newCache();
+        CompiledPythonScript script = CompiledPythonScript.create(null, "params['x'] * 2");
+        AtomicInteger computations = new AtomicInteger();
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            IndexReader.CacheKey segment = cache.segment(reader.leaves().get(0));
+            assertNotNull(segment);
+            FieldResultCache.ScriptKey one = FieldResultCache.scriptKey(script, Map.of("x", 1));
+            FieldResultCache.ScriptKey two = FieldResultCache.scriptKey(script, Map.of("x", 2));
+
+            assertEquals(2, cache.getOrCompute(one, segment, 0, () -> compute(computations, 2)));
+            assertEquals(2, cache.getOrCompute(one, segment, 0, () -> compute(computations, -1)));
+            assertEquals(
+                    2,
+                    cache.getOrCompute(
+                            FieldResultCache.scriptKey(script, Map.of("x", 1)),
+                            segment,
+                            0,
+                            () -> compute(computations, -1)));
+            assertEquals(1, computations.get());
+
+            assertEquals(4, cache.getOrCompute(two, segment, 0, () -> compute(computations, 4)));
+            assertNull(cache.getOrCompute(one, segment, 1, () -> compute(computations, null)));
+            assertNull(cache.getOrCompute(one, segment, 1, () -> compute(computations, -1)));
+            assertEquals(3, computations.get());
+        }
+    }
+
+    public void testInvalidatedWhenSegmentCloses() throws Exception {
+        FieldResultCache cache = newCache();
+        FieldResultCache.ScriptKey script =
+                FieldResultCache.scriptKey(CompiledPythonScript.create(null, "1"), Map.of());
+        AtomicInteger computations = new AtomicInteger();
+        try (Directory directory = new ByteBuffersDirectory()) {
+            IndexReader.CacheKey segment;
+            try (DirectoryReader reader = openReader(directory)) {
+                segment = cache.segment(reader.leaves().get(0));
+                cache.getOrCompute(script, segment, 0, () -> compute(computations, 1));
+            }
+            cache.getOrCompute(script, segment, 0, () -> compute(computations, 1));
+            assertEquals(2, computations.get());
+        }
+    }
+
+    public void testInvalidatesOnlyTheClosedSegment() throws Exception {
+        FieldResultCache cache = newCache();
+        FieldResultCache.ScriptKey script =
+                FieldResultCache.scriptKey(CompiledPythonScript.create(null, "1"), Map.of());
+        AtomicInteger computations = new AtomicInteger();
+        try (Directory directory = new ByteBuffersDirectory();
+                Directory otherDirectory = new ByteBuffersDirectory();
+                DirectoryReader otherReader = openReader(otherDirectory)) {
+            IndexReader.CacheKey other = cache.segment(otherReader.leaves().get(0));
+            cache.getOrCompute(script, other, 0, () -> compute(computations, 1));
+            IndexReader.CacheKey segment;
+            try (DirectoryReader reader = openReader(directory)) {
+                segment = cache.segment(reader.leaves().get(0));
+                cache.getOrCompute(script, segment, 0, () -> compute(computations, 1));
+            }
+            assertEquals(2, computations.get());
+            assertEquals(1, cache.getOrCompute(script, other, 0, () -> compute(computations, -1)));
+            assertEquals(2, computations.get());
+        }
+    }
+
+    public void testResultsAreUnmodifiable() throws Exception {
+        FieldResultCache cache = newCache();
+        FieldResultCache.ScriptKey script =
+                FieldResultCache.scriptKey(CompiledPythonScript.create(null, "[1]"), Map.of());
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            IndexReader.CacheKey segment = cache.segment(reader.leaves().get(0));
+            List<Object> computed = new ArrayList<>(List.of(1, new HashMap<>(Map.of("a", 2))));
+            Object result = cache.getOrCompute(script, segment, 0, () -> computed);
+            assertEquals(computed, result);
+            computed.add(3);
+            List<?> cached = (List<?>) cache.getOrCompute(script, segment, 0, () -> null);
+            assertEquals(List.of(1, Map.of("a", 2)), cached);
+            expectThrows(UnsupportedOperationException.class, () -> cached.remove(0));
+            expectThrows(
+                    UnsupportedOperationException.class,
+                    () -> ((Map<?, ?>) cached.get(1)).clear());
+        }
+    }
+
+    private static FieldResultCache newCache() {
+        return new FieldResultCache(
+                Settings.builder().put(FieldResultCache.SIZE_SETTING.getKey(), "1mb").build());
+    }
+
+    private static DirectoryReader openReader(Directory directory) throws Exception {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            writer.addDocument(new Document());
+            writer.addDocument(new Document());
+        }
+        DirectoryReader reader = DirectoryReader.open(directory);
+        for (LeafReaderContext leaf : reader.leaves()) {
+            assertNotNull(leaf.reader().getCoreCacheHelper());
+        }
+        return reader;
+    }
+
+    private static Object compute(AtomicInteger computations, Object result) {
+        computations.incrementAndGet();
+        return result;
+    }
+}
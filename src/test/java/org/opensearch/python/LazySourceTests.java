@@ -0,0 +1,125 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.graalvm.polyglot.Value;
+import org.opensearch.index.mapper.SourceFieldMapper;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class LazySourceTests extends OpenSearchTestCase {
+    // Documents 0 and 1 have a stored source, document 2 has none
+    private static final String[] SOURCES = {
+        "{\"a\":1,\"b\":{\"c\":[1,2],\"d\":\"x\"},\"n\":null}", "{\"b\":{\"c\":[3]}}", null
+    };
+
+    private static Value key(String key) {
+        return Value.asValue(key);
+    }
+
+    public void testPresentKeys() throws Exception {
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            LazySource source = new LazySource(reader.leaves().get(0), Set.of("a"), Map::of);
+            source.setDocument(0);
+            assertTrue(source.hasHashEntry(key("a")));
+            assertEquals(1, source.getHashValue(key("a")));
+            // Keys that were not planned are parsed on access
+            assertTrue(source.hasHashEntry(key("b")));
+            // A null value is present
+            assertTrue(source.hasHashEntry(key("n")));
+            assertNull(source.getHashValue(key("n")));
+            assertEquals(3, source.getHashSize());
+        }
+    }
+
+    public void testMissingKeys() throws Exception {
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            LazySource source = new LazySource(reader.leaves().get(0), Set.of("a", "z"), Map::of);
+            source.setDocument(0);
+            assertFalse(source.hasHashEntry(key("z")));
+            assertNull(source.getHashValue(key("z")));
+            assertFalse(source.hasHashEntry(key("unplanned")));
+            // Keys are not carried over from the previous document
+            source.setDocument(1);
+            assertFalse(source.hasHashEntry(key("a")));
+            assertTrue(source.hasHashEntry(key("b")));
+            assertEquals(1, source.getHashSize());
+        }
+    }
+
+    public void testNestedKeys() throws Exception {
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            LazySource source = new LazySource(reader.leaves().get(0), Set.of("b"), Map::of);
+            source.setDocument(0);
+            assertEquals(Map.of("c", List.of(1, 2), "d", "x"), source.getHashValue(key("b")));
+            source.setDocument(1);
+            assertEquals(Map.of("c", List.of(3)), source.getHashValue(key("b")));
+        }
+    }
+
+    public void testFallsBackToSourceLookup() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            LazySource source =
+                    new LazySource(
+                            reader.leaves().get(0),
+                            Set.of("a"),
+                            () -> {
+                                lookups.incrementAndGet();
+                                return Map.of("a", 5, "b", List.of("y"));
+                            });
+            source.setDocument(0);
+            assertEquals(1, source.getHashValue(key("a")));
+            assertEquals(0, lookups.get());
+            // Documents without a stored source are read through the generic lookup, once
+            source.setDocument(2);
+            assertEquals(5, source.getHashValue(key("a")));
+            assertEquals(List.of("y"), source.getHashValue(key("b")));
+            assertFalse(source.hasHashEntry(key("z")));
+            assertEquals(2, source.getHashSize());
+            assertEquals(1, lookups.get());
+        }
+    }
+
+    public void testReadOnly() throws Exception {
+        try (Directory directory = new ByteBuffersDirectory();
+                DirectoryReader reader = openReader(directory)) {
+            LazySource source = new LazySource(reader.leaves().get(0), Set.of(), Map::of);
+            source.setDocument(0);
+            expectThrows(
+                    UnsupportedOperationException.class,
+                    () -> source.putHashEntry(key("a"), Value.asValue(2)));
+        }
+    }
+
+    private static DirectoryReader openReader(Directory directory) throws Exception {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            for (String json : SOURCES) {
+                Document document = new Document();
+                if (json != null) {
+                    document.add(new StoredField(SourceFieldMapper.NAME, new BytesRef(json)));
+                }
+                writer.addDocument(document);
+            }
+        }
+        return DirectoryReader.open(directory);
+    }
+}
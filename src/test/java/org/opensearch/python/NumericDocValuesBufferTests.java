@@ -0,0 +1,106 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.opensearch.index.fielddata.IndexNumericFieldData;
+import org.opensearch.index.fielddata.IndexNumericFieldData.NumericType;
+import org.opensearch.index.fielddata.LeafNumericFieldData;
+import org.opensearch.test.OpenSearchTestCase;
+
+// GraalPy keeps compiler and reference handling threads around after contexts are closed
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class NumericDocValuesBufferTests extends OpenSearchTestCase {
+
+    /** Long field data with the given values per document, documents without values are empty. */
+    private static IndexNumericFieldData fieldData(NumericType numericType, long[][] values) {
+        IndexNumericFieldData fieldData = mock(IndexNumericFieldData.class);
+        LeafNumericFieldData leafFieldData = mock(LeafNumericFieldData.class);
+        when(fieldData.getNumericType()).thenReturn(numericType);
+        when(fieldData.load(null)).thenReturn(leafFieldData);
+        when(leafFieldData.getLongValues())
+                .thenAnswer(
+                        invocation ->
+                                new SortedNumericDocValues() {
+                                    private int doc = -1;
+                                    private int next = 0;
+
+                                    @Override
+                                    public boolean advanceExact(int target) {
+                                        doc = target;
+                                        next = 0;
+                                        return target < values.length && values[target].length > 0;
+                                    }
+
+                                    @Override
+                                    public long nextValue() {
+                                        return values[doc][next++];
+                                    }
+
+                                    @Override
+                                    public int docValueCount() {
+                                        return values[doc].length;
+                                    }
+
+                                    @Override
+                                    public int docID() {
+                                        return doc;
+                                    }
+
+                                    @Override
+                                    public int nextDoc() {
+                                        throw new UnsupportedOperationException();
+                                    }
+
+                                    @Override
+                                    public int advance(int target) {
+                                        throw new UnsupportedOperationException();
+                                    }
+
+                                    @Override
+                                    public long cost() {
+                                        return values.length;
+                                    }
+                                });
+        return fieldData;
+    }
+
+    public void testPythonViewsShareTheBuffer() {
+        NumericDocValuesBuffer buffer =
+                NumericDocValuesBuffer.create(
+                        fieldData(NumericType.LONG, new long[][] {{7, 8}, {42}}), null, () -> null);
+        assertNotNull(buffer);
+        buffer.setDocument(0);
+        assertTrue(buffer.buffer().isDirect());
+        try (Context context = ExecutionUtils.createContext()) {
+            Value view =
+                    context.eval("python", "lambda buffer: memoryview(buffer).cast('q')")
+                            .execute(buffer.buffer());
+            assertEquals(7, view.getArrayElement(0).asLong());
+            assertEquals(8, view.getArrayElement(1).asLong());
+            // Loading the next document writes into the buffer the existing view reads from
+            int generation = buffer.generation();
+            buffer.setDocument(1);
+            assertEquals(1, buffer.count());
+            assertEquals(generation, buffer.generation());
+            assertEquals(42, view.getArrayElement(0).asLong());
+        }
+    }
+
+    public void testUnsignedLongsAreNotBuffered() {
+        assertNull(
+                NumericDocValuesBuffer.create(
+                        fieldData(NumericType.UNSIGNED_LONG, new long[][] {{-1}}),
+                        null,
+                        () -> null));
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import static org.hamcrest.Matchers.containsString;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Value;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.concurrency.OpenSearchRejectedExecutionException;
+import org.opensearch.python.ExecutionUtils.ExecutionMode;
+import org.opensearch.python.PythonContextPool.ContextLease;
+import org.opensearch.python.PythonContextPool.PooledContext;
+import org.opensearch.test.OpenSearchTestCase;
+import org.opensearch.threadpool.TestThreadPool;
+import org.opensearch.threadpool.ThreadPool;
+
+// GraalPy keeps compiler and reference handling threads around after contexts are closed
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class PythonContextPoolTests extends OpenSearchTestCase {
+    private static final TimeValue NO_WAIT = TimeValue.timeValueMillis(10);
+
+    private ThreadPool threadPool;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+        super.tearDown();
+    }
+
+    private PythonContextPool newPool(int size, int maxUses, TimeValue idleTimeout) {
+        Settings settings =
+                Settings.builder()
+                        .put(PythonContextPool.POOL_SIZE_SETTING.getKey(), size)
+                        .put(PythonContextPool.MAX_USES_SETTING.getKey(), maxUses)
+                        .put(PythonContextPool.IDLE_TIMEOUT_SETTING.getKey(), idleTimeout)
+                        .build();
+        return new PythonContextPool(settings, threadPool, ExecutionUtils::createContext);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void assertClosed(PooledContext pooled) {
+        expectThrows(IllegalStateException.class, () -> pooled.context().eval("python", "1"));
+    }
+
+    public void testReusesContexts() {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            pooled.context().eval("python", "leaked = 1");
+            pool.release(pooled, true);
+            assertEquals(1, pool.idleCount());
+            assertSame(pooled, pool.borrow(NO_WAIT));
+            // Restored to the baseline before it was handed out again
+            assertFalse(pooled.context().getBindings("python").hasMember("leaked"));
+            pool.release(pooled, false);
+            assertEquals(0, pool.idleCount());
+            assertClosed(pooled);
+        }
+    }
+
+    public void testFreezeParamsKeepsLists() {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            Value params =
+                    pooled.freezeParams(Map.of("l", List.of(1, 2), "m", Map.of("n", List.of(3))));
+            Value check =
+                    pooled.context()
+                            .eval(
+                                    "python",
+                                    "lambda p: (isinstance(p['l'], list), p['l'] + [4],"
+                                            + " isinstance(p['m']['n'], list), p['l'].index(2))");
+            Value result = check.execute(params);
+            assertTrue(result.getArrayElement(0).asBoolean());
+            assertEquals(List.of(1, 2, 4), result.getArrayElement(1).as(List.class));
+            assertTrue(result.getArrayElement(2).asBoolean());
+            assertEquals(1, result.getArrayElement(3).asInt());
+            // Still read-only
+            Value append = pooled.context().eval("python", "lambda p: p['l'].append(3)");
+            PolyglotException e =
+                    expectThrows(PolyglotException.class, () -> append.execute(params));
+            assertThat(e.getMessage(), containsString("read-only"));
+            pool.release(pooled, true);
+        }
+    }
+
+    public void testParamsIncludeLeafEntries() {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            Value frozen = pooled.freezeParams(Map.of("a", 1, "m", Map.of("l", List.of(1, 2))));
+            Value params = pooled.leafParams(frozen, Map.of("a", 1, "_source", "source"));
+            Value check =
+                    pooled.context()
+                            .eval(
+                                    "python",
+                                    "lambda p: (sorted(p), len(p), sorted(p.keys()),"
+                                            + " sorted(dict(p)), '_source' in p, p['_source'])");
+            Value result = check.execute(params);
+            List<String> keys = List.of("_source", "a", "m");
+            assertEquals(keys, result.getArrayElement(0).as(List.class));
+            assertEquals(3, result.getArrayElement(1).asInt());
+            assertEquals(keys, result.getArrayElement(2).as(List.class));
+            assertEquals(keys, result.getArrayElement(3).as(List.class));
+            assertTrue(result.getArrayElement(4).asBoolean());
+            assertEquals("source", result.getArrayElement(5).asString());
+            pool.release(pooled, true);
+        }
+    }
+
+    public void testParamsCopiesAreModifiable() {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            Value frozen = pooled.freezeParams(Map.of("a", 1, "m", Map.of("l", List.of(1, 2))));
+            Value params = pooled.leafParams(frozen, Map.of("_source", "source"));
+            Value check =
+                    pooled.context()
+                            .eval(
+                                    "python",
+                                    "import copy\n"
+                                            + "def check(p):\n"
+                                            + "    shallow = copy.copy(p)\n"
+                                            + "    shallow['b'] = 2\n"
+                                            + "    deep = copy.deepcopy(p)\n"
+                                            + "    deep['m']['l'].append(3)\n"
+                                            + "    return (type(shallow) is dict, sorted(shallow),"
+                                            + " type(deep['m']) is dict, deep['m']['l'],"
+                                            + " p['m']['l'], deep['_source'])\n"
+                                            + "check");
+            Value result = check.execute(params);
+            assertTrue(result.getArrayElement(0).asBoolean());
+            assertEquals(
+                    List.of("_source", "a", "b", "m"), result.getArrayElement(1).as(List.class));
+            assertTrue(result.getArrayElement(2).asBoolean());
+            assertEquals(List.of(1, 2, 3), result.getArrayElement(3).as(List.class));
+            // The parameters themselves are unchanged
+            assertEquals(List.of(1, 2), result.getArrayElement(4).as(List.class));
+            assertEquals("source", result.getArrayElement(5).asString());
+            pool.release(pooled, true);
+        }
+    }
+
+    public void testMaxUses() {
+        try (PythonContextPool pool = newPool(1, 2, TimeValue.timeValueMinutes(5))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            pool.release(pooled, true);
+            assertSame(pooled, pool.borrow(NO_WAIT));
+            // Worn out after its second use
+            pool.release(pooled, true);
+            assertEquals(0, pool.idleCount());
+            assertClosed(pooled);
+            PooledContext next = pool.borrow(NO_WAIT);
+            assertNotSame(pooled, next);
+            pool.release(next, true);
+        }
+    }
+
+    public void testIdleEviction() throws Exception {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMillis(100))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            pool.release(pooled, true);
+            assertBusy(() -> assertEquals(0, pool.idleCount()));
+            assertClosed(pooled);
+            PooledContext next = pool.borrow(NO_WAIT);
+            assertNotSame(pooled, next);
+            pool.release(next, true);
+        }
+    }
+
+    public void testExhaustionAndRejection() throws Exception {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            expectThrows(OpenSearchRejectedExecutionException.class, () -> pool.borrow(NO_WAIT));
+            // A waiting borrow gets the context once it is released
+            CountDownLatch borrowed = new CountDownLatch(1);
+            Thread waiter =
+                    new Thread(
+                            () -> {
+                                PooledContext next = pool.borrow(TimeValue.timeValueSeconds(30));
+                                borrowed.countDown();
+                                pool.release(next, true);
+                            });
+            waiter.start();
+            pool.release(pooled, true);
+            assertTrue(borrowed.await(30, TimeUnit.SECONDS));
+            waiter.join();
+        }
+    }
+
+    public void testInlineExecutionsFailFastWhenExhausted() {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            PythonRuntime runtime =
+                    new PythonRuntime(threadPool, pool, ExecutionMode.INLINE, null, NO_WAIT);
+            CompiledPythonScript script = CompiledPythonScript.create(null, "'a' * 2");
+            PooledContext pooled = pool.borrow(NO_WAIT);
+            // Rejected after the borrow timeout rather than the script timeout
+            long start = System.nanoTime();
+            expectThrows(
+                    OpenSearchRejectedExecutionException.class,
+                    () -> ExecutionUtils.executeTemplate(runtime, script, Map.of()));
+            assertTrue(
+                    System.nanoTime() - start
+                            < TimeUnit.SECONDS.toNanos(ExecutionUtils.getTIMEOUT_IN_SECONDS()));
+            pool.release(pooled, true);
+            assertEquals("aa", ExecutionUtils.executeTemplate(runtime, script, Map.of()));
+        }
+    }
+
+    public void testLeaseReclaimAfterIdleTimeout() throws Exception {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            ContextLease lease = pool.newLease();
+            PooledContext pooled = lease.acquire(NO_WAIT);
+            lease.release(true);
+            // Pinned to the lease, which takes it back without a reset
+            assertSame(pooled, lease.acquire(NO_WAIT));
+            lease.release(true);
+            assertEquals(0, pool.idleCount());
+            // The watchdog returns it to the pool once the lease stopped using it
+            assertBusy(() -> assertEquals(1, pool.idleCount()));
+            assertSame(pooled, lease.acquire(NO_WAIT));
+            assertEquals(0, pool.idleCount());
+            lease.release(false);
+            assertClosed(pooled);
+        }
+    }
+
+    public void testLeaseReclaimWhenExhausted() {
+        try (PythonContextPool pool = newPool(1, 0, TimeValue.timeValueMinutes(5))) {
+            ContextLease lease = pool.newLease();
+            PooledContext pooled = lease.acquire(NO_WAIT);
+            lease.release(true);
+            // Taken over right away instead of waiting for the lease to time out
+            assertSame(pooled, pool.borrow(NO_WAIT));
+            pool.release(pooled, true);
+        }
+    }
+
+    public void testLeaseReclaimHonorsMaxUses() {
+        try (PythonContextPool pool = newPool(1, 1, TimeValue.timeValueMinutes(5))) {
+            ContextLease lease = pool.newLease();
+            PooledContext pooled = lease.acquire(NO_WAIT);
+            lease.release(true);
+            // Worn out, so it is closed instead of being handed out again
+            PooledContext next = pool.borrow(NO_WAIT);
+            assertNotSame(pooled, next);
+            assertClosed(pooled);
+            pool.release(next, true);
+        }
+    }
+
+    public void testCloseRacingRelease() throws Exception {
+        int size = 4;
+        PythonContextPool pool = newPool(size, 0, TimeValue.timeValueMinutes(5));
+        List<PooledContext> contexts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            contexts.add(pool.borrow(NO_WAIT));
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (PooledContext pooled : contexts) {
+            threads.add(
+                    new Thread(
+                            () -> {
+                                await(start);
+                                pool.release(pooled, true);
+                            }));
+        }
+        threads.add(
+                new Thread(
+                        () -> {
+                            await(start);
+                            pool.close();
+                        }));
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // No context survives close(), whichever side won the race
+        assertEquals(0, pool.idleCount());
+        contexts.forEach(PythonContextPoolTests::assertClosed);
+        expectThrows(IllegalStateException.class, () -> pool.borrow(NO_WAIT));
+    }
+}
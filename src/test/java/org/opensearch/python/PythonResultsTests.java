@@ -0,0 +1,35 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import java.math.BigInteger;
+import org.graalvm.polyglot.Context;
+import org.opensearch.test.OpenSearchTestCase;
+
+// GraalPy keeps compiler and reference handling threads around after contexts are closed
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class PythonResultsTests extends OpenSearchTestCase {
+
+    private static Object toJava(Context context, String code) {
+        // Numbers do not need the pooled context
+        return PythonResults.toJava(null, context.eval("python", code));
+    }
+
+    public void testNumbers() {
+        try (Context context = ExecutionUtils.createContext()) {
+            assertEquals(3, toJava(context, "3"));
+            assertEquals(1L << 40, toJava(context, "2 ** 40"));
+            assertEquals(BigInteger.TWO.pow(70), toJava(context, "2 ** 70"));
+            assertEquals(2.0, toJava(context, "2.0"));
+            assertEquals(0.5, toJava(context, "0.5"));
+            // Floats outside the range of a long stay floats
+            assertEquals(1e20, toJava(context, "1e20"));
+            assertEquals(-1e300, toJava(context, "-1e300"));
+            assertEquals(Double.POSITIVE_INFINITY, toJava(context, "float('inf')"));
+        }
+    }
+}
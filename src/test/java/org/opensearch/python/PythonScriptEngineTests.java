@@ -0,0 +1,59 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import org.opensearch.common.settings.Settings;
+import org.opensearch.script.ScriptException;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class PythonScriptEngineTests extends OpenSearchTestCase {
+    private static final String NESTED_LOOPS =
+            "for a in doc['a']:\n    for b in doc['b']:\n        for c in doc['c']:\n"
+                    + "            x = a * b * c";
+
+    private static PythonScriptEngine engine(long threshold, String action) {
+        return new PythonScriptEngine(
+                Settings.builder()
+                        .put(PythonScriptEngine.COST_THRESHOLD_SETTING.getKey(), threshold)
+                        .put(PythonScriptEngine.COST_ACTION_SETTING.getKey(), action)
+                        .build());
+    }
+
+    public void testRejectsCostlyScripts() {
+        PythonScriptEngine engine = engine(100_000, "reject");
+        engine.checkCost(CompiledPythonScript.create(null, "for a in doc['a']:\n    x = a"));
+        ScriptException e =
+                expectThrows(
+                        ScriptException.class,
+                        () -> engine.checkCost(CompiledPythonScript.create(null, NESTED_LOOPS)));
+        assertTrue(e.getMessage(), e.getMessage().contains("estimated cost of [1000000]"));
+        assertTrue(e.getMessage(), e.getMessage().contains("unbounded loops [3]"));
+    }
+
+    public void testDefaultThresholdFlagsNestedDocValueLoops() {
+        PythonScriptEngine engine =
+                new PythonScriptEngine(
+                        Settings.builder()
+                                .put(PythonScriptEngine.COST_ACTION_SETTING.getKey(), "reject")
+                                .build());
+        engine.checkCost(
+                CompiledPythonScript.create(
+                        null, "for a in doc['a']:\n    for b in doc['b']:\n        x = a * b"));
+        // Costs exactly the default threshold
+        ScriptException e =
+                expectThrows(
+                        ScriptException.class,
+                        () -> engine.checkCost(CompiledPythonScript.create(null, NESTED_LOOPS)));
+        assertTrue(e.getMessage(), e.getMessage().contains("estimated cost of [1000000]"));
+    }
+
+    public void testFlagsCostlyScripts() {
+        // Costly scripts are only logged
+        engine(100_000, "warn").checkCost(CompiledPythonScript.create(null, NESTED_LOOPS));
+        // 0 disables the check
+        engine(0, "reject").checkCost(CompiledPythonScript.create(null, NESTED_LOOPS));
+    }
+}
@@ -47,4 +47,97 @@ public class PythonScriptUtilityTests extends OpenSearchTestCase {
         Set<String> fields = PythonScriptUtility.extractAccessedDocFields(code);
         assertEquals(expectedFields, fields);
     }
+
+    public void testExtractAccessedSourceKeys() {
+        String code =
+                "len(params['_source']['name']) + params[\"_source\"][\"user\"]['age']"
+                        + " + params['factor'] + params['_source'][key] + source['_source']['x']";
+        assertEquals(Set.of("name", "user"), PythonScriptUtility.extractAccessedSourceKeys(code));
+    }
+
+    public void testMayReadName() {
+        assertTrue(PythonScriptUtility.mayReadName("_score * 2", "_score"));
+        assertTrue(PythonScriptUtility.mayReadName("x = 1\nmath.log(_score + x)\n", "_score"));
+        assertTrue(PythonScriptUtility.mayReadName("eval(params['expr'])", "_score"));
+        assertTrue(PythonScriptUtility.mayReadName("globals()['_' + 'score']", "_score"));
+        assertFalse(PythonScriptUtility.mayReadName("doc['a'].value * 2", "_score"));
+        assertFalse(PythonScriptUtility.mayReadName("params['_score'] + 1", "_score"));
+        assertFalse(PythonScriptUtility.mayReadName("# _score\nmy_score = 1\n", "_score"));
+        // Replacement fields are part of the f-string token
+        assertTrue(PythonScriptUtility.mayReadName("f\"{_score}\"", "_score"));
+        assertTrue(PythonScriptUtility.mayReadName("float(Rf'{_score:.2f}')", "_score"));
+        assertFalse(PythonScriptUtility.mayReadName("f\"_score\" + '{_score}'", "_score"));
+    }
+
+    public void testDefinesFunction() {
+        String code =
+                "import math\n"
+                        + "def helper(x):\n"
+                        + "    def score_batch(doc):\n"
+                        + "        return x\n"
+                        + "    return x\n"
+                        + "@decorate\n"
+                        + "def score_batch(doc, _score, params):\n"
+                        + "    return [math.log(v) for v in doc['a'].first(1)]\n";
+        assertTrue(PythonScriptUtility.definesFunction(code, "score_batch"));
+        assertTrue(PythonScriptUtility.definesFunction(code, "helper"));
+        assertFalse(PythonScriptUtility.definesFunction(code, "math"));
+        assertFalse(
+                PythonScriptUtility.definesFunction(
+                        "def helper():\n    def score_batch(doc):\n        pass\n",
+                        "score_batch"));
+        assertFalse(PythonScriptUtility.definesFunction("score_batch = 1\n", "score_batch"));
+    }
+
+    public void testIsDeterministic() {
+        String[] deterministic =
+                new String[] {
+                    "import math\nmath.log(doc['a'].value + 1)",
+                    "import numpy as np\nnp.mean(doc['a'])",
+                    "from datetime import datetime\ndatetime.fromisoformat(params['date']).year",
+                    "random = 4\nparams['random'] * doc['time'].value",
+                    "x.id + len(params['hash'])",
+                    "import json, re\nlen(re.findall('a', json.dumps(params['j'])))",
+                    "import numpy as np\nnp.linalg.norm(doc['v']) + np.datetime64('2020-01-01').day"
+                };
+        for (String code : deterministic) {
+            assertTrue(
+                    code + " should be deterministic", PythonScriptUtility.isDeterministic(code));
+        }
+        String[] nondeterministic =
+                new String[] {
+                    "import random\nrandom.random()",
+                    "def f():\n    from time import time\n    return time()\nf()",
+                    "import os.path\n1",
+                    "import uuid as u\nu.uuid4().int",
+                    "from secrets import randbelow\nrandbelow(10)",
+                    "import numpy.random\n1",
+                    "from numpy import random\nrandom.rand()",
+                    "import numpy as np\nnp.random.rand()",
+                    "from datetime import datetime as dt\ndt.now().year",
+                    "import datetime\ndatetime.date.today().day",
+                    "hash(params['key']) % 10",
+                    "id(doc)",
+                    "eval(params['code'])",
+                    "__import__('random').random()",
+                    "import subprocess\n1",
+                    "import socket\n1",
+                    "from urllib.request import urlopen\n1",
+                    "import threading\n1",
+                    "from pathlib import Path\n1",
+                    "import tempfile\n1",
+                    "import sys\n1",
+                    "import my_module\n1",
+                    "from . import helpers\n1",
+                    "import numpy as np\ngetattr(np, 'random').rand()",
+                    "import numpy as np\nnp.datetime64('now').astype(int)",
+                    "from numpy import datetime64\ndatetime64(\"today\")",
+                    "doc.__dict__"
+                };
+        for (String code : nondeterministic) {
+            assertFalse(
+                    code + " should not be deterministic",
+                    PythonScriptUtility.isDeterministic(code));
+        }
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python;
+
+import java.util.Set;
+import org.opensearch.python.antlr.DfaCache;
+import org.opensearch.script.ScriptException;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class ScriptAnalysisTests extends OpenSearchTestCase {
+
+    public void testExpression() {
+        ScriptAnalysis analysis =
+                ScriptAnalysis.analyze("sum(doc['ratings']) / len(doc['ratings']) * _score");
+        assertTrue(analysis.expression());
+        assertEquals(Set.of("ratings"), analysis.docFields());
+        assertEquals(Set.of(), analysis.sourceKeys());
+        assertTrue(analysis.readsScore());
+        assertEquals(Set.of(), analysis.imports());
+        assertEquals(Set.of(), analysis.functions());
+        assertEquals(0, analysis.cost().loopDepth());
+        assertTrue(analysis.deterministic());
+        assertNotNull(analysis.numericExpression());
+    }
+
+    public void testStatements() {
+        ScriptAnalysis analysis =
+                ScriptAnalysis.analyze(
+                        "import math\n"
+                                + "from numpy import mean\n"
+                                + "def score_batch(doc, _score, params):\n"
+                                + "    return [math.log(v) for v in doc['a'].first(1)]\n"
+                                + "total = 0\n"
+                                + "for x in params['_source']['values']:\n"
+                                + "    while x > 1:\n"
+                                + "        x = sum([y for y in range(x) for z in range(y)])\n"
+                                + "    total += x\n"
+                                + "total");
+        assertFalse(analysis.expression());
+        assertEquals(Set.of("a"), analysis.docFields());
+        assertEquals(Set.of("values"), analysis.sourceKeys());
+        assertTrue(analysis.readsScore());
+        assertEquals(Set.of("math", "numpy"), analysis.imports());
+        assertEquals(Set.of("score_batch"), analysis.functions());
+        assertEquals(4, analysis.cost().loopDepth());
+        assertTrue(analysis.deterministic());
+        assertNull(analysis.numericExpression());
+    }
+
+    public void testNotAnExpression() {
+        for (String code : new String[] {"x = 1", "x += 1", "1, 2", "1; 2", "pass"}) {
+            assertFalse(code + " is not an expression", ScriptAnalysis.analyze(code).expression());
+        }
+        assertFalse(ScriptAnalysis.analyze("params['a']").readsScore());
+        assertFalse(ScriptAnalysis.analyze("import random\nrandom.random()").deterministic());
+    }
+
+    public void testInvalidScripts() {
+        expectThrows(ScriptException.class, () -> ScriptAnalysis.analyze("x = (1 +"));
+        expectThrows(ScriptException.class, () -> ScriptAnalysis.analyze("while True:\n    x = 1"));
+    }
+
+    public void testWarmUp() {
+        ScriptAnalysis.warmUp();
+        assertTrue(DfaCache.size() > 0);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.antlr;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class DfaCacheTests extends OpenSearchTestCase {
+
+    public void testClearedPastLimit() {
+        parse("x = [v * 2 for v in doc['a']]\nsum(x)\n");
+        assertTrue(DfaCache.size() > 0);
+        try {
+            DfaCache.setMaxStates(1);
+            parse("import math\nmath.log(doc['a'].value)\n");
+            assertEquals(0, DfaCache.size());
+        } finally {
+            DfaCache.setMaxStates(Integer.MAX_VALUE);
+        }
+        parse("import math\nmath.log(doc['a'].value)\n");
+        assertTrue(DfaCache.size() > 0);
+    }
+
+    private static void parse(String code) {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
+        Python3Parser parser = new Python3Parser(new CommonTokenStream(lexer));
+        TwoStageParsing.parse(parser, Python3Parser::file_input);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.antlr;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class Python3LexerBaseTests extends OpenSearchTestCase {
+
+    public void testIndentation() {
+        assertEquals(
+                List.of(
+                        Python3Lexer.IF, Python3Lexer.NAME, Python3Lexer.COLON,
+                        Python3Lexer.NEWLINE, Python3Lexer.INDENT, Python3Lexer.NAME,
+                        Python3Lexer.NEWLINE, Python3Lexer.DEDENT, Python3Lexer.NAME,
+                        Python3Lexer.NEWLINE, Python3Lexer.EOF),
+                types("if x:\n\tx\n\ny\n"));
+        assertEquals(8, Python3LexerBase.getIndentationCount("\t"));
+        assertEquals(8, Python3LexerBase.getIndentationCount("  \t"));
+        assertEquals(10, Python3LexerBase.getIndentationCount("\t  "));
+    }
+
+    public void testDeepIndentationAtEof() {
+        // More pending dedents than the initial capacity of the token queue and indent stack
+        int depth = 40;
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            code.append("    ".repeat(i)).append("if x:\n");
+        }
+        code.append("    ".repeat(depth)).append("pass");
+        List<Integer> types = types(code.toString());
+        assertEquals(depth, types.stream().filter(t -> t == Python3Lexer.INDENT).count());
+        assertEquals(depth, types.stream().filter(t -> t == Python3Lexer.DEDENT).count());
+        assertEquals(Python3Lexer.EOF, (int) types.get(types.size() - 1));
+        assertEquals(1, types.stream().filter(t -> t == Python3Lexer.EOF).count());
+        assertEquals(
+                List.of(Python3Lexer.PASS, Python3Lexer.NEWLINE, Python3Lexer.DEDENT),
+                types.subList(types.size() - depth - 3, types.size() - depth));
+    }
+
+    public void testReset() {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString("if x:\n    if y:\n"));
+        lexer.getAllTokens();
+        lexer.setInputStream(CharStreams.fromString("x\n"));
+        List<Integer> types = new ArrayList<>();
+        for (Token token : lexer.getAllTokens()) {
+            types.add(token.getType());
+        }
+        assertEquals(List.of(Python3Lexer.NAME, Python3Lexer.NEWLINE), types);
+    }
+
+    private static List<Integer> types(String code) {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
+        List<Integer> types = new ArrayList<>();
+        for (Token token = lexer.nextToken(); ; token = lexer.nextToken()) {
+            types.add(token.getType());
+            if (token.getType() == Token.EOF) {
+                return types;
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.antlr;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class TwoStageParsingTests extends OpenSearchTestCase {
+
+    public void testParsesValidCodeWithSll() {
+        List<String> errors = new ArrayList<>();
+        Python3Parser parser =
+                newParser(
+                        "import math\n"
+                                + "def f(x):\n"
+                                + "    return [math.log(v) for v in x if v > 0]\n"
+                                + "sum(f(doc['a']))\n",
+                        errors);
+        Python3Parser.File_inputContext tree =
+                TwoStageParsing.parse(parser, Python3Parser::file_input);
+        assertEquals(3, tree.stmt().size());
+        assertEquals(PredictionMode.SLL, parser.getInterpreter().getPredictionMode());
+        assertEquals(List.of(), errors);
+    }
+
+    public void testReportsSyntaxErrorsWithLl() {
+        List<String> errors = new ArrayList<>();
+        Python3Parser parser = newParser("x = (1 +\ny = 2\n", errors);
+        TwoStageParsing.parse(parser, Python3Parser::file_input);
+        assertEquals(PredictionMode.LL, parser.getInterpreter().getPredictionMode());
+        assertFalse(errors.isEmpty());
+    }
+
+    private static Python3Parser newParser(String code, List<String> errors) {
+        Python3Lexer lexer = new Python3Lexer(CharStreams.fromString(code));
+        Python3Parser parser = new Python3Parser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(
+                new BaseErrorListener() {
+                    @Override
+                    public void syntaxError(
+                            Recognizer<?, ?> recognizer,
+                            Object offendingSymbol,
+                            int line,
+                            int charPositionInLine,
+                            String msg,
+                            RecognitionException e) {
+                        errors.add("line " + line + ":" + charPositionInLine + " " + msg);
+                    }
+                });
+        return parser;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.expression;
+
+import java.util.Map;
+import org.opensearch.test.OpenSearchTestCase;
+
+public class NumericExpressionTests extends OpenSearchTestCase {
+
+    public void testCompile() {
+        String[] supported =
+                new String[] {
+                    "-_score * 3",
+                    "abs(_score)",
+                    "sum(doc['ratings']) / len(doc['ratings']) * params['factor']",
+                    "doc['price'].value * 1.5 if doc['price'].size() > 0 else 0.0",
+                    "import math; math.log1p(doc['likes'][0]) + math.pi",
+                    "max(doc['a'].getValue(), doc['b'].get(-1), 2)"
+                };
+        for (String code : supported) {
+            assertNotNull(code + " should compile", NumericExpression.compile(code));
+        }
+        String[] unsupported =
+                new String[] {
+                    "'hello ' + 'world'",
+                    "x = 1\nx",
+                    "import os; 1",
+                    "math.sqrt(4)",
+                    "2 ** 3 ** 2",
+                    "doc['a']",
+                    "_score > 1",
+                    "_score, 1",
+                    "len(params['values'])",
+                    "1j * 2"
+                };
+        for (String code : unsupported) {
+            assertNull(code + " should not compile", NumericExpression.compile(code));
+        }
+    }
+
+    public void testPythonSemantics() {
+        assertEquals(-6.0, evaluate("-_score * 3", 2.0), 0);
+        assertEquals(-4.0, evaluate("7 // -2", 0), 0);
+        assertEquals(2.0, evaluate("-7 % 3", 0), 0);
+        assertEquals(3.0, evaluate("7.5 // 2", 0), 0);
+        assertEquals(0.5, evaluate("-7.5 % 2", 0), 0);
+        assertEquals(-0.5, evaluate("7.5 % -2", 0), 0);
+        assertEquals(1024.0, evaluate("2 ** 10", 0), 0);
+        assertEquals(0.5, evaluate("2 ** -1", 0), 0);
+        assertEquals(-4.0, evaluate("-2 ** 2", 0), 0);
+        assertEquals(3.5, evaluate("max(_score, 1.5)", 3.5), 0);
+        assertEquals(1.0, evaluate("1.0 if 1 < _score < 3 and not _score == 2.5 else 0.0", 2), 0);
+        assertEquals(0.0, evaluate("1.0 if 1 < _score < 3 and not _score == 2.5 else 0.0", 2.5), 0);
+        assertEquals(4.0, evaluate("import math\nmath.sqrt(params['x'])", 0), 0);
+        assertEquals(3.0, evaluate("import math\nmath.floor(params['y']) + 1", 0), 0);
+        assertEquals(5.0, evaluate("abs(-params['x'] + 11)", 0), 0);
+        // The sign of zero follows Python, where the int 0 has none
+        assertEquals(0.0, evaluate("-(params['x'] - 16)", 0), 0);
+        assertEquals(1.0 / 0.0, 1.0 / evaluate("-(params['x'] - 16)", 0), 0);
+    }
+
+    public void testFallback() {
+        String[] fallbacks =
+                new String[] {
+                    "1 / (_score - _score)",
+                    "7 // 0",
+                    "9223372036854775807 + 1",
+                    "import math\nmath.sqrt(-_score)",
+                    "import math\nmath.log(0)",
+                    "(-_score) ** 0.5",
+                    "10.0 ** 400"
+                };
+        for (String code : fallbacks) {
+            expectThrows(
+                    ExpressionEvaluator.FallbackException.class, () -> evaluate(code, 1.0));
+        }
+    }
+
+    public void testLink() {
+        // The types of params and fields are only known when the expression is linked
+        assertNull(link("params['s'] * 2"));
+        assertNull(link("params['missing'] * 2"));
+        assertNull(link("max(1, 2.5)"));
+        assertNull(link("1 if _score else 2.0"));
+        assertNull(link("2 ** abs(params['x'])"));
+        assertNull(link("doc['a'].value"));
+        assertNotNull(link("2 ** params['x']"));
+    }
+
+    private static ExpressionEvaluator link(String code) {
+        NumericExpression expression = NumericExpression.compile(code);
+        assertNotNull(code + " should compile", expression);
+        return expression.link(Map.of("x", 16, "y", 2.5, "s", "text"), field -> null);
+    }
+
+    private static double evaluate(String code, double score) {
+        ExpressionEvaluator evaluator = link(code);
+        assertNotNull(code + " should link", evaluator);
+        return evaluator.evaluate(0, score);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.opensearch.python.phase;
+
+import org.opensearch.test.OpenSearchTestCase;
+
+public class ScriptCostTests extends OpenSearchTestCase {
+
+    private static ScriptCost estimate(String code) {
+        return ScriptCost.estimate(new SemanticAnalyzer(code + '\n').checkSemantic());
+    }
+
+    public void testStraightLine() {
+        assertEquals(new ScriptCost(0, 0, 0, 1), estimate("doc['a'].value * 2"));
+        assertEquals(new ScriptCost(0, 0, 0, 3), estimate("x = 1\ny = x + 1\ny"));
+    }
+
+    public void testBoundedLoops() {
+        assertEquals(
+                new ScriptCost(1, 0, 0, 12),
+                estimate("total = 0\nfor i in range(10):\n    total += i\ntotal"));
+        assertEquals(4, estimate("for i in range(2, 10, 2):\n    x = i").estimate());
+        assertEquals(3, estimate("for i in [1, 2, 3]:\n    x = i").estimate());
+        assertEquals(0, estimate("for i in range(0x10, 10):\n    x = i").estimate());
+        // Strings without their prefix and quotes
+        assertEquals(3, estimate("for c in 'abc':\n    x = c").estimate());
+        assertEquals(2, estimate("for c in b\"ab\":\n    x = c").estimate());
+        assertEquals(2, estimate("for c in r'''ab''':\n    x = c").estimate());
+        assertEquals(3, estimate("for c in 'a' \"bc\":\n    x = c").estimate());
+        assertEquals(new ScriptCost(1, 0, 0, 6), estimate("n = 0\nwhile n < 5:\n    n += 1"));
+        assertEquals(new ScriptCost(1, 0, 0, 5), estimate("[x * 2 for x in range(4)]"));
+    }
+
+    public void testUnboundedLoops() {
+        assertEquals(
+                new ScriptCost(2, 2, 0, 10_000),
+                estimate(
+                        "for v in doc['tags']:\n"
+                                + "    for w in range(params['n']):\n"
+                                + "        x = v"));
+        assertEquals(new ScriptCost(1, 1, 0, 100), estimate("while x > 1:\n    x -= 1"));
+        assertEquals(new ScriptCost(1, 1, 0, 100), estimate("for c in f'{x}':\n    y = c"));
+        assertEquals(
+                new ScriptCost(2, 2, 0, 10_101),
+                estimate("[(a, b) for a in doc['x'] for b in doc['y']]"));
+    }
+
+    public void testExpensiveCalls() {
+        assertEquals(
+                new ScriptCost(0, 0, 1, 102),
+                estimate("import re\nre.compile(params['p']).match('a')"));
+        assertEquals(
+                new ScriptCost(0, 0, 1, 102),
+                estimate("import numpy as np\nnp.linalg.inv(params['m'])"));
+        assertEquals(new ScriptCost(0, 0, 1, 101), estimate("params['l'].sort()"));
+        // Inside the loop body a call runs once per iteration, in the iterable only once
+        assertEquals(
+                new ScriptCost(1, 1, 1, 10_100), estimate("for v in doc['a']:\n    sorted(v)"));
+        assertEquals(
+                new ScriptCost(1, 1, 1, 200),
+                estimate("for k in sorted(params['m']):\n    x = k"));
+        assertEquals(0, estimate("sort(params['l'])").expensiveCalls());
+    }
+
+    public void testSaturates() {
+        StringBuilder code = new StringBuilder();
+        for (int level = 0; level < 12; level++) {
+            code.append("    ".repeat(level)).append("for v").append(level).append(" in x:\n");
+        }
+        code.append("    ".repeat(12)).append("pass");
+        ScriptCost cost = estimate(code.toString());
+        assertEquals(12, cost.loopDepth());
+        assertEquals(12, cost.unboundedLoops());
+        assertEquals(Long.MAX_VALUE, cost.estimate());
+    }
+}